@@ -1,5 +1,5 @@
 /*
- * Copyright 2017 Anton Tananaev (anton.tananaev@gmail.com)
+ * Copyright 2017 - 2018 Anton Tananaev (anton.tananaev@gmail.com)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -15,6 +15,10 @@
  */
 package org.traccar.client;
 
+import android.content.Context;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.GoogleApiAvailability;
 import com.google.firebase.analytics.FirebaseAnalytics;
 
 public class GoogleMainApplication extends MainApplication {
@@ -27,4 +31,13 @@ public class GoogleMainApplication extends MainApplication {
         firebaseAnalytics = FirebaseAnalytics.getInstance(this);
     }
 
+    @Override
+    public PositionProvider createPositionProvider(Context context, PositionProvider.PositionListener listener) {
+        int status = GoogleApiAvailability.getInstance().isGooglePlayServicesAvailable(context);
+        if (status == ConnectionResult.SUCCESS) {
+            return new GooglePositionProvider(context, listener);
+        }
+        return super.createPositionProvider(context, listener);
+    }
+
 }
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2018 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.client;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.location.Location;
+import android.os.Looper;
+
+import com.google.android.gms.location.FusedLocationProviderClient;
+import com.google.android.gms.location.LocationCallback;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationResult;
+import com.google.android.gms.location.LocationServices;
+
+public class GooglePositionProvider extends PositionProvider {
+
+    private FusedLocationProviderClient fusedLocationClient;
+
+    private final LocationCallback locationCallback = new LocationCallback() {
+        @Override
+        public void onLocationResult(LocationResult locationResult) {
+            for (Location location : locationResult.getLocations()) {
+                processLocation(location);
+            }
+            if (batchDelay > 0) {
+                deliverBatch();
+            }
+        }
+    };
+
+    public GooglePositionProvider(Context context, PositionListener listener) {
+        super(context, listener);
+        fusedLocationClient = LocationServices.getFusedLocationProviderClient(context);
+    }
+
+    public static int getPriority(String accuracy) {
+        switch (accuracy) {
+            case "high":
+                return LocationRequest.PRIORITY_HIGH_ACCURACY;
+            case "low":
+                return LocationRequest.PRIORITY_LOW_POWER;
+            default:
+                return LocationRequest.PRIORITY_BALANCED_POWER_ACCURACY;
+        }
+    }
+
+    // With batching enabled, fused provider holds locations for up to
+    // batchDelay and delivers them in one result
+    @SuppressLint("MissingPermission")
+    @Override
+    protected void requestUpdates(long interval, String accuracy) {
+        LocationRequest request = LocationRequest.create()
+                .setPriority(getPriority(accuracy))
+                .setInterval(interval)
+                .setFastestInterval(Math.min(interval, MINIMUM_INTERVAL));
+        if (batchDelay > interval) {
+            request.setMaxWaitTime(batchDelay);
+        }
+        fusedLocationClient.requestLocationUpdates(request, locationCallback, Looper.myLooper());
+    }
+
+    @SuppressLint("MissingPermission")
+    @Override
+    protected void requestSleepUpdates() {
+        LocationRequest request = LocationRequest.create()
+                .setPriority(LocationRequest.PRIORITY_LOW_POWER)
+                .setInterval(SLEEP_INTERVAL)
+                .setFastestInterval(MINIMUM_INTERVAL);
+        fusedLocationClient.requestLocationUpdates(request, locationCallback, Looper.myLooper());
+    }
+
+    @Override
+    protected void removeUpdates() {
+        fusedLocationClient.removeLocationUpdates(locationCallback);
+    }
+
+}
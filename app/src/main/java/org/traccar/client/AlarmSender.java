@@ -0,0 +1,199 @@
+/*
+ * Copyright 2018 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.client;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.util.Log;
+import android.widget.Toast;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+public class AlarmSender {
+
+    private static final String TAG = AlarmSender.class.getSimpleName();
+
+    private static final int RETRY_BASE_DELAY = 250;
+    private static final int RETRY_MAX_DELAY = 15 * 1000;
+    private static final int WAKE_LOCK_TIMEOUT = 10 * 60 * 1000;
+    private static final int ALARM_EXPIRY = 24 * 60 * 60 * 1000;
+    private static final int HTTP_REQUEST_TIMEOUT = 408;
+
+    private static AlarmSender instance;
+
+    public static synchronized AlarmSender getInstance(Context context) {
+        if (instance == null) {
+            instance = new AlarmSender(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    //
+    // Alarms bypass the position queue. Each request is stored durably
+    // before the first attempt and delivered in order on a dedicated thread,
+    // retried with short jittered delays and no circuit breaker until it
+    // succeeds. An alarm the server rejects, or one still failing after
+    // ALARM_EXPIRY, is dropped with a notice so it does not block the next.
+    //
+
+    private final Context context;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private final RetryPolicy retryPolicy;
+    private final PowerManager.WakeLock wakeLock;
+
+    private ScheduledFuture<?> retryFuture;
+    private long attemptId;
+    private long attemptStart;
+
+    private AlarmSender(Context context) {
+        this.context = context;
+        retryPolicy = new RetryPolicy(
+                RETRY_BASE_DELAY, RETRY_MAX_DELAY, Integer.MAX_VALUE, 0, new Random(), new RetryPolicy.Clock() {
+            @Override
+            public long currentTime() {
+                return SystemClock.elapsedRealtime();
+            }
+        });
+        PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, getClass().getName());
+        wakeLock.setReferenceCounted(false);
+    }
+
+    public void warmUp(final String url) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                RequestManager.warmUp(url);
+            }
+        });
+    }
+
+    public void send(final String request) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                wakeLock.acquire(WAKE_LOCK_TIMEOUT);
+                Statistics.increment(R.string.statistics_alarms);
+                try {
+                    DatabaseHelper.getInstance(context).insertAlarm(request);
+                } catch (RuntimeException e) {
+                    Log.w(TAG, e);
+                    sendDirect(request);
+                }
+                deliver();
+            }
+        });
+    }
+
+    // Alarm that could not be stored gets a single attempt without retries
+    private void sendDirect(String request) {
+        RequestManager.Response response = RequestManager.executeRequest(new RequestManager.Request(request));
+        if (response != null && response.isSuccessful()) {
+            StatusActivity.addMessage(context.getString(R.string.status_alarm_sent));
+            showToast(R.string.status_send_success);
+        } else {
+            StatusActivity.addMessage(context.getString(R.string.status_alarm_failed));
+            showToast(R.string.status_alarm_failed);
+        }
+    }
+
+    public void flush() {
+        executor.execute(deliverRunnable);
+    }
+
+    private final Runnable deliverRunnable = new Runnable() {
+        @Override
+        public void run() {
+            deliver();
+        }
+    };
+
+    private void deliver() {
+        if (retryFuture != null) {
+            retryFuture.cancel(false);
+            retryFuture = null;
+        }
+        try {
+            DatabaseHelper databaseHelper = DatabaseHelper.getInstance(context);
+            for (Map.Entry<Long, String> alarm : databaseHelper.selectAlarms().entrySet()) {
+                if (alarm.getKey() != attemptId) {
+                    attemptId = alarm.getKey();
+                    attemptStart = SystemClock.elapsedRealtime();
+                }
+                RequestManager.Response response = RequestManager.executeRequest(
+                        new RequestManager.Request(alarm.getValue()));
+                if (response != null && response.isSuccessful()) {
+                    retryPolicy.onSuccess();
+                    databaseHelper.deleteAlarm(alarm.getKey());
+                    StatusActivity.addMessage(context.getString(R.string.status_alarm_sent));
+                    showToast(R.string.status_send_success);
+                } else if (isRejected(response) || SystemClock.elapsedRealtime() - attemptStart >= ALARM_EXPIRY) {
+                    Log.w(TAG, "alarm dropped");
+                    retryPolicy.onSuccess();
+                    databaseHelper.deleteAlarm(alarm.getKey());
+                    StatusActivity.addMessage(context.getString(R.string.status_alarm_failed));
+                    showToast(R.string.status_alarm_failed);
+                } else {
+                    long delay = response != null
+                            ? retryPolicy.onFailure(response.getCode(), response.getRetryAfter())
+                            : retryPolicy.onFailure(0, 0);
+                    Log.d(TAG, "alarm retry in " + delay);
+                    Statistics.increment(R.string.statistics_alarm_retries);
+                    retryFuture = executor.schedule(deliverRunnable, delay, TimeUnit.MILLISECONDS);
+                    return;
+                }
+            }
+        } catch (RuntimeException e) {
+            Log.w(TAG, e);
+            long delay = retryPolicy.onFailure(0, 0);
+            Statistics.increment(R.string.statistics_alarm_retries);
+            retryFuture = executor.schedule(deliverRunnable, delay, TimeUnit.MILLISECONDS);
+            return;
+        }
+        if (wakeLock.isHeld()) {
+            wakeLock.release();
+        }
+    }
+
+    // Client errors other than timeout and rate limit will not succeed on retry
+    private static boolean isRejected(RequestManager.Response response) {
+        if (response == null) {
+            return false;
+        }
+        int code = response.getCode();
+        return code == RequestManager.CODE_INVALID || code >= 400 && code < 500
+                && code != HTTP_REQUEST_TIMEOUT && code != RetryPolicy.HTTP_TOO_MANY_REQUESTS;
+    }
+
+    private void showToast(final int message) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                Toast.makeText(context, message, Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
+}
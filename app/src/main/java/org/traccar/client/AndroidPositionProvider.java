@@ -0,0 +1,94 @@
+/*
+ * Copyright 2018 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.client;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.location.Criteria;
+import android.location.Location;
+import android.location.LocationListener;
+import android.location.LocationManager;
+import android.os.Bundle;
+import android.os.Looper;
+
+public class AndroidPositionProvider extends PositionProvider implements LocationListener {
+
+    private LocationManager locationManager;
+
+    public AndroidPositionProvider(Context context, PositionListener listener) {
+        super(context, listener);
+        locationManager = (LocationManager) context.getSystemService(Context.LOCATION_SERVICE);
+    }
+
+    @SuppressLint("MissingPermission")
+    @Override
+    protected void requestUpdates(long interval, String accuracy) {
+        locationManager.requestLocationUpdates(interval, 0, getCriteria(accuracy), this, Looper.myLooper());
+    }
+
+    @SuppressLint("MissingPermission")
+    @Override
+    protected void requestSleepUpdates() {
+        locationManager.requestLocationUpdates(
+                LocationManager.PASSIVE_PROVIDER, 0, 0, this, Looper.myLooper());
+        if (locationManager.isProviderEnabled(LocationManager.NETWORK_PROVIDER)) {
+            locationManager.requestLocationUpdates(
+                    LocationManager.NETWORK_PROVIDER, SLEEP_INTERVAL, 0, this, Looper.myLooper());
+        }
+    }
+
+    @Override
+    protected void removeUpdates() {
+        locationManager.removeUpdates(this);
+    }
+
+    public static Criteria getCriteria(String accuracy) {
+        Criteria criteria = new Criteria();
+        switch (accuracy) {
+            case "high":
+                criteria.setHorizontalAccuracy(Criteria.ACCURACY_HIGH);
+                criteria.setPowerRequirement(Criteria.POWER_HIGH);
+                break;
+            case "low":
+                criteria.setHorizontalAccuracy(Criteria.ACCURACY_LOW);
+                criteria.setPowerRequirement(Criteria.POWER_LOW);
+                break;
+            default:
+                criteria.setHorizontalAccuracy(Criteria.ACCURACY_MEDIUM);
+                criteria.setPowerRequirement(Criteria.POWER_MEDIUM);
+                break;
+        }
+        return criteria;
+    }
+
+    @Override
+    public void onLocationChanged(Location location) {
+        processLocation(location);
+    }
+
+    @Override
+    public void onStatusChanged(String provider, int status, Bundle extras) {
+    }
+
+    @Override
+    public void onProviderEnabled(String provider) {
+    }
+
+    @Override
+    public void onProviderDisabled(String provider) {
+    }
+
+}
@@ -15,166 +15,546 @@
  */
 package org.traccar.client;
 
+import android.annotation.TargetApi;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteFullException;
 import android.database.sqlite.SQLiteOpenHelper;
-import android.os.AsyncTask;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
+import android.util.Log;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
-public class DatabaseHelper extends SQLiteOpenHelper {
+public class DatabaseHelper extends SQLiteOpenHelper implements PositionStore {
 
-    public static final int DATABASE_VERSION = 3;
+    public static final int DATABASE_VERSION = 9;
     public static final String DATABASE_NAME = "traccar.db";
 
-    public interface DatabaseHandler<T> {
-        void onComplete(boolean success, T result);
-    }
+    private static final String TAG = DatabaseHelper.class.getSimpleName();
 
-    private static abstract class DatabaseAsyncTask<T> extends AsyncTask<Void, Void, T> {
+    //
+    // Device identifiers are stored once in the device table and
+    // referenced from queued positions.
+    //
 
-        private DatabaseHandler<T> handler;
-        private RuntimeException error;
+    private static final String SELECT_POSITIONS = "SELECT " +
+            "p.id, d.deviceId, p.time, p.latitude, p.longitude, p.altitude, " +
+            "p.speed, p.course, p.accuracy, p.battery, p.mock, p.rawLatitude, p.rawLongitude, " +
+            "p.charging, p.network, p.cached " +
+            "FROM position p LEFT JOIN device d ON d.id = p.device " +
+            "WHERE p.id > ? ORDER BY p.id LIMIT ?";
 
-        public DatabaseAsyncTask(DatabaseHandler<T> handler) {
-            this.handler = handler;
-        }
+    private static final int COLUMN_ID = 0;
+    private static final int COLUMN_DEVICE_ID = 1;
+    private static final int COLUMN_TIME = 2;
+    private static final int COLUMN_LATITUDE = 3;
+    private static final int COLUMN_LONGITUDE = 4;
+    private static final int COLUMN_ALTITUDE = 5;
+    private static final int COLUMN_SPEED = 6;
+    private static final int COLUMN_COURSE = 7;
+    private static final int COLUMN_ACCURACY = 8;
+    private static final int COLUMN_BATTERY = 9;
+    private static final int COLUMN_MOCK = 10;
+    private static final int COLUMN_RAW_LATITUDE = 11;
+    private static final int COLUMN_RAW_LONGITUDE = 12;
+    private static final int COLUMN_CHARGING = 13;
+    private static final int COLUMN_NETWORK = 14;
+    private static final int COLUMN_CACHED = 15;
 
-        @Override
-        protected T doInBackground(Void... params) {
-            try {
-                return executeMethod();
-            } catch (RuntimeException error) {
-                this.error = error;
-                return null;
-            }
-        }
+    private static final int FULL_EVICTION_MIN = 100;
+    private static final int FULL_EVICTION_RATIO = 10;
+
+    private Context context;
+    private SQLiteDatabase db;
+
+    private long rows;
+    private long pageSize;
+    private volatile long maxRows;
+    private volatile long maxBytes;
+    private volatile EvictionPolicy evictionPolicy = new EvictionPolicy.Oldest();
+    private volatile long readId;
+
+    private final Map<String, Long> devices = new HashMap<>();
 
-        protected abstract T executeMethod();
+    private SQLiteStatement insertStatement;
+    private SQLiteStatement insertDeviceStatement;
+    private SQLiteStatement selectDeviceStatement;
+    private SQLiteStatement deleteStatement;
 
-        @Override
-        protected void onPostExecute(T result) {
-            handler.onComplete(error == null, result);
+    private static DatabaseHelper instance;
+
+    // Shared by the controller, the alarm lane and settings, so inserts and
+    // cached device ids are never split between connections
+    public static synchronized DatabaseHelper getInstance(Context context) {
+        if (instance == null) {
+            instance = new DatabaseHelper(context.getApplicationContext());
         }
+        return instance;
     }
 
-    private SQLiteDatabase db;
-
     public DatabaseHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this.context = context;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            setWriteAheadLoggingEnabled(true);
+        }
         db = getWritableDatabase();
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            db.enableWriteAheadLogging();
+        }
+
+        insertStatement = db.compileStatement("INSERT INTO position " +
+                "(device, time, latitude, longitude, altitude, speed, course, accuracy, battery, mock, " +
+                "rawLatitude, rawLongitude, charging, network, cached) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+        insertDeviceStatement = db.compileStatement("INSERT OR IGNORE INTO device (deviceId) VALUES (?)");
+        selectDeviceStatement = db.compileStatement("SELECT id FROM device WHERE deviceId = ?");
+        deleteStatement = db.compileStatement("DELETE FROM position WHERE id = ?");
+
+        rows = DatabaseUtils.queryNumEntries(db, "position");
+        pageSize = DatabaseUtils.longForQuery(db, "PRAGMA page_size", null);
+    }
+
+    @Override
+    public void setQuota(long maxRows, long maxBytes, EvictionPolicy evictionPolicy) {
+        this.maxRows = maxRows;
+        this.maxBytes = maxBytes;
+        this.evictionPolicy = evictionPolicy;
+    }
+
+    private synchronized void addRows(long count) {
+        rows += count;
+    }
+
+    @Override
+    public synchronized long getRows() {
+        return rows;
+    }
+
+    @Override
+    public long getBytes() {
+        long pageCount = DatabaseUtils.longForQuery(db, "PRAGMA page_count", null);
+        long freeCount = DatabaseUtils.longForQuery(db, "PRAGMA freelist_count", null);
+        return (pageCount - freeCount) * pageSize;
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        db.execSQL("PRAGMA synchronous = NORMAL");
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
+        createTables(db);
+    }
+
+    private static void createAlarmTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS alarm (" +
+                "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                "request TEXT)");
+    }
+
+    private static void createTables(SQLiteDatabase db) {
+        createAlarmTable(db);
+        db.execSQL("CREATE TABLE device (" +
+                "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                "deviceId TEXT UNIQUE)");
         db.execSQL("CREATE TABLE position (" +
                 "id INTEGER PRIMARY KEY AUTOINCREMENT," +
-                "deviceId TEXT," +
+                "device INTEGER," +
                 "time INTEGER," +
-                "latitude REAL," +
-                "longitude REAL," +
-                "altitude REAL," +
-                "speed REAL," +
-                "course REAL," +
-                "accuracy REAL," +
-                "battery REAL," +
-                "mock INTEGER)");
+                "latitude INTEGER," +
+                "longitude INTEGER," +
+                "altitude INTEGER," +
+                "speed INTEGER," +
+                "course INTEGER," +
+                "accuracy INTEGER," +
+                "battery INTEGER," +
+                "mock INTEGER," +
+                "rawLatitude INTEGER," +
+                "rawLongitude INTEGER," +
+                "charging INTEGER," +
+                "network INTEGER," +
+                "cached INTEGER)");
+        createIndexes(db);
+    }
+
+    private static void createIndexes(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX IF NOT EXISTS position_device ON position (device)");
+    }
+
+    private static void recreateTables(SQLiteDatabase db) {
+        db.execSQL("DROP TABLE IF EXISTS position");
+        db.execSQL("DROP TABLE IF EXISTS device");
+        db.execSQL("DROP TABLE IF EXISTS alarm");
+        createTables(db);
+    }
+
+    private static String toFixed(String column, double scale) {
+        return "CAST(ROUND(" + column + " * " + scale + ") AS INTEGER)";
+    }
+
+    private static void migrateToCompact(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE position RENAME TO position_old");
+        createTables(db);
+        db.execSQL("INSERT INTO device (deviceId) " +
+                "SELECT DISTINCT deviceId FROM position_old WHERE deviceId IS NOT NULL");
+        db.execSQL("INSERT INTO position " +
+                "(id, device, time, latitude, longitude, altitude, speed, course, accuracy, battery, mock) " +
+                "SELECT p.id, d.id, p.time, " +
+                toFixed("p.latitude", COORDINATE_SCALE) + ", " +
+                toFixed("p.longitude", COORDINATE_SCALE) + ", " +
+                toFixed("p.altitude", ALTITUDE_SCALE) + ", " +
+                toFixed("p.speed", SPEED_SCALE) + ", " +
+                toFixed("p.course", COURSE_SCALE) + ", " +
+                toFixed("p.accuracy", ACCURACY_SCALE) + ", " +
+                toFixed("p.battery", BATTERY_SCALE) + ", " +
+                "p.mock FROM position_old p LEFT JOIN device d ON d.deviceId = p.deviceId");
+        db.execSQL("DROP TABLE position_old");
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        db.execSQL("DROP TABLE IF EXISTS position;");
-        onCreate(db);
+        if (oldVersion < 3) {
+            Log.w(TAG, "unsupported database version " + oldVersion);
+            recreateTables(db);
+            return;
+        }
+        if (oldVersion < 4) {
+            migrateToCompact(db);
+            return;
+        }
+        if (oldVersion < 5) {
+            createIndexes(db);
+        }
+        if (oldVersion < 6) {
+            db.execSQL("ALTER TABLE position ADD COLUMN rawLatitude INTEGER");
+            db.execSQL("ALTER TABLE position ADD COLUMN rawLongitude INTEGER");
+        }
+        if (oldVersion < 7) {
+            db.execSQL("ALTER TABLE position ADD COLUMN charging INTEGER");
+            db.execSQL("ALTER TABLE position ADD COLUMN network INTEGER");
+        }
+        if (oldVersion < 8) {
+            db.execSQL("ALTER TABLE position ADD COLUMN cached INTEGER");
+        }
+        if (oldVersion < 9) {
+            createAlarmTable(db);
+        }
     }
 
+    @Override
     public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        db.execSQL("DROP TABLE IF EXISTS position;");
-        onCreate(db);
+        Log.w(TAG, "unsupported database version " + oldVersion);
+        recreateTables(db);
+    }
+
+    private long selectDevice(String deviceId) {
+        Long id = devices.get(deviceId);
+        if (id == null) {
+            insertDeviceStatement.bindString(1, deviceId);
+            insertDeviceStatement.executeInsert();
+            selectDeviceStatement.bindString(1, deviceId);
+            id = selectDeviceStatement.simpleQueryForLong();
+            devices.put(deviceId, id);
+        }
+        return id;
+    }
+
+    private void insert(Position position) {
+        synchronized (insertStatement) {
+            if (position.getDeviceId() != null) {
+                insertStatement.bindLong(1, selectDevice(position.getDeviceId()));
+            } else {
+                insertStatement.bindNull(1);
+            }
+            insertStatement.bindLong(2, position.getTime().getTime());
+            insertStatement.bindLong(3, Math.round(position.getLatitude() * COORDINATE_SCALE));
+            insertStatement.bindLong(4, Math.round(position.getLongitude() * COORDINATE_SCALE));
+            insertStatement.bindLong(5, Math.round(position.getAltitude() * ALTITUDE_SCALE));
+            insertStatement.bindLong(6, Math.round(position.getSpeed() * SPEED_SCALE));
+            insertStatement.bindLong(7, Math.round(position.getCourse() * COURSE_SCALE));
+            insertStatement.bindLong(8, Math.round(position.getAccuracy() * ACCURACY_SCALE));
+            insertStatement.bindLong(9, Math.round(position.getBattery() * BATTERY_SCALE));
+            insertStatement.bindLong(10, position.getMock() ? 1 : 0);
+            if (position.getRawLatitude() != null && position.getRawLongitude() != null) {
+                insertStatement.bindLong(11, Math.round(position.getRawLatitude() * COORDINATE_SCALE));
+                insertStatement.bindLong(12, Math.round(position.getRawLongitude() * COORDINATE_SCALE));
+            } else {
+                insertStatement.bindNull(11);
+                insertStatement.bindNull(12);
+            }
+            insertStatement.bindLong(13, position.getCharging() ? 1 : 0);
+            insertStatement.bindLong(14, position.getNetwork());
+            insertStatement.bindLong(15, position.getCached() ? 1 : 0);
+            insertStatement.executeInsert();
+        }
     }
 
     public void insertPosition(Position position) {
-        ContentValues values = new ContentValues();
-        values.put("deviceId", position.getDeviceId());
-        values.put("time", position.getTime().getTime());
-        values.put("latitude", position.getLatitude());
-        values.put("longitude", position.getLongitude());
-        values.put("altitude", position.getAltitude());
-        values.put("speed", position.getSpeed());
-        values.put("course", position.getCourse());
-        values.put("accuracy", position.getAccuracy());
-        values.put("battery", position.getBattery());
-        values.put("mock", position.getMock() ? 1 : 0);
-
-        db.insertOrThrow("position", null, values);
-    }
-
-    public void insertPositionAsync(final Position position, DatabaseHandler<Void> handler) {
-        new DatabaseAsyncTask<Void>(handler) {
+        insertPositions(Collections.singletonList(position));
+    }
+
+    private Position readPosition(Cursor cursor) {
+        Position position = new Position();
+
+        position.setId(cursor.getLong(COLUMN_ID));
+        position.setDeviceId(cursor.getString(COLUMN_DEVICE_ID));
+        position.setTime(new Date(cursor.getLong(COLUMN_TIME)));
+        position.setLatitude(cursor.getLong(COLUMN_LATITUDE) / COORDINATE_SCALE);
+        position.setLongitude(cursor.getLong(COLUMN_LONGITUDE) / COORDINATE_SCALE);
+        position.setAltitude(cursor.getLong(COLUMN_ALTITUDE) / ALTITUDE_SCALE);
+        position.setSpeed(cursor.getLong(COLUMN_SPEED) / SPEED_SCALE);
+        position.setCourse(cursor.getLong(COLUMN_COURSE) / COURSE_SCALE);
+        position.setAccuracy(cursor.getLong(COLUMN_ACCURACY) / ACCURACY_SCALE);
+        position.setBattery(cursor.getLong(COLUMN_BATTERY) / BATTERY_SCALE);
+        position.setMock(cursor.getInt(COLUMN_MOCK) > 0);
+        if (!cursor.isNull(COLUMN_RAW_LATITUDE) && !cursor.isNull(COLUMN_RAW_LONGITUDE)) {
+            position.setRawLatitude(cursor.getLong(COLUMN_RAW_LATITUDE) / COORDINATE_SCALE);
+            position.setRawLongitude(cursor.getLong(COLUMN_RAW_LONGITUDE) / COORDINATE_SCALE);
+        }
+        position.setCharging(cursor.getInt(COLUMN_CHARGING) > 0);
+        position.setNetwork(cursor.getInt(COLUMN_NETWORK));
+        position.setCached(cursor.getInt(COLUMN_CACHED) > 0);
+
+        return position;
+    }
+
+    private void insertTransaction(List<Position> positions) {
+        try {
+            db.beginTransaction();
+            try {
+                for (Position position : positions) {
+                    insert(position);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } catch (RuntimeException e) {
+            // device rows inserted by a failed transaction are rolled back
+            synchronized (insertStatement) {
+                devices.clear();
+            }
+            throw e;
+        }
+        addRows(positions.size());
+    }
+
+    @Override
+    public void insertPositions(List<Position> positions) {
+        try {
+            insertTransaction(positions);
+        } catch (SQLiteFullException e) {
+            Log.w(TAG, e);
+            evict((int) Math.max(Math.max(positions.size(), FULL_EVICTION_MIN), getRows() / FULL_EVICTION_RATIO),
+                    new EvictionPolicy.Oldest());
+            insertTransaction(positions);
+        }
+        enforceQuota();
+    }
+
+    // Only contiguous eviction of the oldest rows reliably frees pages, so
+    // the byte quota ignores the configured policy
+    private void enforceQuota() {
+        long count = getRows();
+        if (maxRows > 0 && count > maxRows) {
+            long target = maxRows * QUOTA_LOW_WATER / 100;
+            evict((int) Math.min(Integer.MAX_VALUE, count - target), evictionPolicy);
+        }
+        if (maxBytes > 0) {
+            count = getRows();
+            long bytes = getBytes();
+            if (bytes > maxBytes && count > 0) {
+                long target = maxBytes * QUOTA_LOW_WATER / 100;
+                long rowBytes = Math.max(1, bytes / count);
+                evict((int) Math.min(count, (bytes - target + rowBytes - 1) / rowBytes), new EvictionPolicy.Oldest());
+            }
+        }
+    }
+
+    private long[] selectIds(long afterId, int limit) {
+        Cursor cursor = db.rawQuery("SELECT id FROM position WHERE id > ? ORDER BY id LIMIT ?",
+                new String[] { String.valueOf(afterId), String.valueOf(limit) });
+        try {
+            long[] ids = new long[cursor.getCount()];
+            for (int i = 0; cursor.moveToNext(); i++) {
+                ids[i] = cursor.getLong(0);
+            }
+            return ids;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void evict(int count, EvictionPolicy policy) {
+        long[] ids = policy.select(selectIds(policy.skipsRead() ? readId : 0, policy.getCandidates(count)), count);
+        if (ids.length > 0) {
+            deletePositions(ids);
+            Log.i(TAG, "evicted " + ids.length + " positions");
+            Statistics.add(R.string.statistics_evicted, ids.length);
+            StatusActivity.addMessage(context.getString(R.string.status_evicted));
+        }
+        if (ids.length < count && policy.skipsRead()) {
+            evict(count - ids.length, new EvictionPolicy.Oldest());
+        }
+    }
+
+    @Override
+    public void insertPositionsAsync(final List<Position> positions, StoreHandler<Void> handler) {
+        new StoreTask<Void>(handler) {
             @Override
             protected Void executeMethod() {
-                insertPosition(position);
+                insertPositions(positions);
                 return null;
             }
         }.execute();
     }
 
     public Position selectPosition() {
-        Position position = new Position();
+        List<Position> positions = selectPositions(0, 1);
+        return positions.isEmpty() ? null : positions.get(0);
+    }
 
-        Cursor cursor = db.rawQuery("SELECT * FROM position ORDER BY id LIMIT 1", null);
+    @Override
+    public List<Position> selectPositions(long afterId, int limit) {
+        List<Position> positions = new ArrayList<>();
+        Cursor cursor = db.rawQuery(SELECT_POSITIONS, new String[] { String.valueOf(afterId), String.valueOf(limit) });
         try {
-            if (cursor.getCount() > 0) {
-
-                cursor.moveToFirst();
-
-                position.setId(cursor.getLong(cursor.getColumnIndex("id")));
-                position.setDeviceId(cursor.getString(cursor.getColumnIndex("deviceId")));
-                position.setTime(new Date(cursor.getLong(cursor.getColumnIndex("time"))));
-                position.setLatitude(cursor.getDouble(cursor.getColumnIndex("latitude")));
-                position.setLongitude(cursor.getDouble(cursor.getColumnIndex("longitude")));
-                position.setAltitude(cursor.getDouble(cursor.getColumnIndex("altitude")));
-                position.setSpeed(cursor.getDouble(cursor.getColumnIndex("speed")));
-                position.setCourse(cursor.getDouble(cursor.getColumnIndex("course")));
-                position.setAccuracy(cursor.getDouble(cursor.getColumnIndex("accuracy")));
-                position.setBattery(cursor.getDouble(cursor.getColumnIndex("battery")));
-                position.setMock(cursor.getInt(cursor.getColumnIndex("mock")) > 0);
-
-            } else {
-                return null;
+            while (cursor.moveToNext()) {
+                positions.add(readPosition(cursor));
             }
         } finally {
             cursor.close();
         }
-
-        return position;
+        if (!positions.isEmpty()) {
+            readId = Math.max(readId, positions.get(positions.size() - 1).getId());
+        }
+        return positions;
     }
 
-    public void selectPositionAsync(DatabaseHandler<Position> handler) {
-        new DatabaseAsyncTask<Position>(handler) {
+    @Override
+    public void selectPositionsAsync(final long afterId, final int limit, StoreHandler<List<Position>> handler) {
+        new StoreTask<List<Position>>(handler) {
             @Override
-            protected Position executeMethod() {
-                return selectPosition();
+            protected List<Position> executeMethod() {
+                return selectPositions(afterId, limit);
             }
         }.execute();
     }
 
     public void deletePosition(long id) {
-        if (db.delete("position", "id = ?", new String[] { String.valueOf(id) }) != 1) {
-            throw new SQLException();
+        synchronized (deleteStatement) {
+            deleteStatement.bindLong(1, id);
+            if (deleteStatement.executeUpdateDelete() != 1) {
+                throw new SQLException();
+            }
+            addRows(-1);
+        }
+    }
+
+    @Override
+    public void deletePositions(long[] ids) {
+        if (ids.length == 0) {
+            return;
+        }
+        StringBuilder where = new StringBuilder("id IN (");
+        for (int i = 0; i < ids.length; i++) {
+            if (i > 0) {
+                where.append(',');
+            }
+            where.append(ids[i]);
         }
+        where.append(')');
+        addRows(-db.delete("position", where.toString(), null));
     }
 
-    public void deletePositionAsync(final long id, DatabaseHandler<Void> handler) {
-        new DatabaseAsyncTask<Void>(handler) {
+    @Override
+    public void deletePositionsAsync(final long[] ids, StoreHandler<Void> handler) {
+        new StoreTask<Void>(handler) {
             @Override
             protected Void executeMethod() {
-                deletePosition(id);
+                deletePositions(ids);
                 return null;
             }
         }.execute();
     }
 
+    @Override
+    public void changeDevice(String deviceId, boolean retag) {
+        // Lock order matches insertTransaction, transaction first and then the statement monitor
+        db.beginTransaction();
+        try {
+            synchronized (insertStatement) {
+                try {
+                    long device = selectDevice(deviceId);
+                    String[] args = new String[] { String.valueOf(device) };
+                    if (retag) {
+                        db.execSQL("UPDATE position SET device = ? WHERE device IS NOT ?",
+                                new Object[] { device, device });
+                    } else {
+                        addRows(-db.delete("position", "device IS NULL OR device IN " +
+                                "(SELECT id FROM device WHERE id <> ?)", args));
+                    }
+                    db.delete("device", "id <> ?", args);
+                } finally {
+                    devices.clear();
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    @Override
+    public void changeDeviceAsync(final String deviceId, final boolean retag, StoreHandler<Void> handler) {
+        new StoreTask<Void>(handler) {
+            @Override
+            protected Void executeMethod() {
+                changeDevice(deviceId, retag);
+                return null;
+            }
+        }.execute();
+    }
+
+    //
+    // Alarm requests are kept in their own table, outside of the position
+    // queue, quota and eviction, until they are delivered.
+    //
+
+    public long insertAlarm(String request) {
+        ContentValues values = new ContentValues();
+        values.put("request", request);
+        return db.insertOrThrow("alarm", null, values);
+    }
+
+    public Map<Long, String> selectAlarms() {
+        Map<Long, String> alarms = new LinkedHashMap<>();
+        Cursor cursor = db.rawQuery("SELECT id, request FROM alarm ORDER BY id", null);
+        try {
+            while (cursor.moveToNext()) {
+                alarms.put(cursor.getLong(0), cursor.getString(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        return alarms;
+    }
+
+    public void deleteAlarm(long id) {
+        db.delete("alarm", "id = ?", new String[] { String.valueOf(id) });
+    }
+
 }
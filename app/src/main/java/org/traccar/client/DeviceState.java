@@ -0,0 +1,133 @@
+/*
+ * Copyright 2018 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.client;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.BatteryManager;
+import android.os.SystemClock;
+
+public class DeviceState {
+
+    public static final int NETWORK_UNKNOWN = 0;
+    public static final int NETWORK_NONE = 1;
+    public static final int NETWORK_WIFI = 2;
+    public static final int NETWORK_CELLULAR = 3;
+    public static final int NETWORK_OTHER = 4;
+
+    private static final long UPDATE_INTERVAL = 30 * 1000;
+
+    private static DeviceState instance;
+
+    public static synchronized DeviceState getInstance(Context context) {
+        if (instance == null) {
+            instance = new DeviceState(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    //
+    // Sticky battery intent and network info are read on demand and reused
+    // for UPDATE_INTERVAL, so fast fixes share one query and nothing is
+    // registered to wake the process while tracking is stopped.
+    //
+
+    private final Context context;
+    private final ConnectivityManager connectivityManager;
+
+    private long updateTime;
+    private double batteryLevel;
+    private boolean charging;
+    private int network = NETWORK_UNKNOWN;
+
+    DeviceState(Context context) {
+        this.context = context;
+        connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+    }
+
+    private void update() {
+        long time = SystemClock.elapsedRealtime();
+        if (updateTime == 0 || time - updateTime >= UPDATE_INTERVAL) {
+            updateTime = time;
+            Intent batteryIntent = context.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+            if (batteryIntent != null) {
+                updateBattery(batteryIntent);
+            }
+            updateNetwork();
+        }
+    }
+
+    private void updateBattery(Intent intent) {
+        int level = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, 0);
+        int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, 1);
+        batteryLevel = scale > 0 ? (level * 100.0) / scale : 0;
+        charging = intent.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+    }
+
+    private void updateNetwork() {
+        NetworkInfo networkInfo = connectivityManager != null ? connectivityManager.getActiveNetworkInfo() : null;
+        if (networkInfo == null || !networkInfo.isConnected()) {
+            network = NETWORK_NONE;
+        } else {
+            switch (networkInfo.getType()) {
+                case ConnectivityManager.TYPE_WIFI:
+                case ConnectivityManager.TYPE_ETHERNET:
+                    network = NETWORK_WIFI;
+                    break;
+                case ConnectivityManager.TYPE_MOBILE:
+                    network = NETWORK_CELLULAR;
+                    break;
+                default:
+                    network = NETWORK_OTHER;
+                    break;
+            }
+        }
+    }
+
+    public synchronized double getBatteryLevel() {
+        update();
+        return batteryLevel;
+    }
+
+    public synchronized boolean isCharging() {
+        update();
+        return charging;
+    }
+
+    public synchronized int getNetwork() {
+        update();
+        return network;
+    }
+
+    public static String getNetworkName(int network) {
+        switch (network) {
+            case NETWORK_NONE:
+                return "none";
+            case NETWORK_WIFI:
+                return "wifi";
+            case NETWORK_CELLULAR:
+                return "cellular";
+            case NETWORK_OTHER:
+                return "other";
+            default:
+                return null;
+        }
+    }
+
+}
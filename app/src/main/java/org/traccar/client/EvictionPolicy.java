@@ -0,0 +1,114 @@
+/*
+ * Copyright 2018 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.client;
+
+import java.util.Arrays;
+
+public abstract class EvictionPolicy {
+
+    public static final String OLDEST = "oldest";
+    public static final String THIN = "thin";
+    public static final String FIRST_LATEST = "first_latest";
+
+    public static EvictionPolicy create(String name) {
+        switch (name) {
+            case THIN:
+                return new Thin();
+            case FIRST_LATEST:
+                return new FirstLatest();
+            default:
+                return new Oldest();
+        }
+    }
+
+    // Number of oldest queued ids the policy needs to evict count positions
+    public abstract int getCandidates(int count);
+
+    // Select ids to evict out of the oldest queued ids, ordered by id
+    public abstract long[] select(long[] candidates, int count);
+
+    // Candidates only include positions the store has not returned for sending yet
+    public boolean skipsRead() {
+        return false;
+    }
+
+    public static class Oldest extends EvictionPolicy {
+
+        @Override
+        public int getCandidates(int count) {
+            return count;
+        }
+
+        @Override
+        public long[] select(long[] candidates, int count) {
+            return Arrays.copyOf(candidates, Math.min(count, candidates.length));
+        }
+
+    }
+
+    //
+    // Thinning evicts evenly spaced positions out of a window of the oldest
+    // unread ones, THIN_WINDOW times larger than needed. Repeated evictions
+    // leave older history progressively sparser, while recent positions and
+    // positions already read for sending stay intact.
+    //
+
+    public static class Thin extends EvictionPolicy {
+
+        private static final int THIN_WINDOW = 4;
+
+        @Override
+        public int getCandidates(int count) {
+            return (int) Math.min(Integer.MAX_VALUE, (long) count * THIN_WINDOW);
+        }
+
+        @Override
+        public boolean skipsRead() {
+            return true;
+        }
+
+        @Override
+        public long[] select(long[] candidates, int count) {
+            if (candidates.length <= count) {
+                return candidates;
+            }
+            long[] ids = new long[count];
+            for (int i = 0; i < count; i++) {
+                ids[i] = candidates[(int) ((long) i * candidates.length / count)];
+            }
+            return ids;
+        }
+
+    }
+
+    public static class FirstLatest extends EvictionPolicy {
+
+        @Override
+        public int getCandidates(int count) {
+            return count < Integer.MAX_VALUE ? count + 1 : count;
+        }
+
+        @Override
+        public long[] select(long[] candidates, int count) {
+            if (candidates.length < 2) {
+                return new long[0];
+            }
+            return Arrays.copyOfRange(candidates, 1, Math.min(count + 1, candidates.length));
+        }
+
+    }
+
+}
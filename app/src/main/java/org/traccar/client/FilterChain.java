@@ -0,0 +1,133 @@
+/*
+ * Copyright 2018 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.client;
+
+import android.content.SharedPreferences;
+import android.location.Location;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class FilterChain {
+
+    private static final String TAG = FilterChain.class.getSimpleName();
+
+    public static final String FILTER_DUPLICATE = "duplicate";
+    public static final String FILTER_ACCURACY = "accuracy";
+    public static final String FILTER_SPEED = "speed";
+    public static final String FILTER_JITTER = "jitter";
+    public static final String FILTER_KALMAN = "kalman";
+
+    public static final String DEFAULT_ORDER = "duplicate,accuracy,speed,kalman,jitter";
+
+    private static class Stage {
+
+        private final int key;
+        private final LocationFilter filter;
+        private long dropped;
+
+        Stage(int key, LocationFilter filter) {
+            this.key = key;
+            this.filter = filter;
+        }
+
+    }
+
+    private final List<Stage> stages = new ArrayList<>();
+    private Location lastLocation;
+    private KalmanFilter kalmanFilter;
+
+    public KalmanFilter getKalmanFilter() {
+        return kalmanFilter;
+    }
+
+    public void addFilter(int key, LocationFilter filter) {
+        stages.add(new Stage(key, filter));
+    }
+
+    public long getDropped(int key) {
+        long dropped = 0;
+        for (Stage stage : stages) {
+            if (stage.key == key) {
+                dropped += stage.dropped;
+            }
+        }
+        return dropped;
+    }
+
+    public boolean accept(Location location) {
+        for (Stage stage : stages) {
+            if (!stage.filter.accept(location, lastLocation)) {
+                stage.dropped += 1;
+                Statistics.increment(stage.key);
+                return false;
+            }
+        }
+        lastLocation = location;
+        return true;
+    }
+
+    public static FilterChain create(SharedPreferences preferences, long interval, double distance, double angle) {
+        double tolerance = Integer.parseInt(preferences.getString(MainFragment.KEY_DEAD_RECKONING, "0"));
+        double accuracy = Integer.parseInt(preferences.getString(MainFragment.KEY_FILTER_ACCURACY, "0"));
+        double speed = Integer.parseInt(preferences.getString(MainFragment.KEY_FILTER_SPEED, "0")) / 3.6;
+        double jitter = Integer.parseInt(preferences.getString(MainFragment.KEY_FILTER_JITTER, "0"));
+        boolean kalman = preferences.getBoolean(MainFragment.KEY_KALMAN, false);
+
+        FilterChain chain = new FilterChain();
+        for (String name : preferences.getString(MainFragment.KEY_FILTER_ORDER, DEFAULT_ORDER).split(",")) {
+            switch (name.trim()) {
+                case FILTER_DUPLICATE:
+                    chain.addFilter(R.string.statistics_filter_duplicate, new LocationFilter.Duplicate());
+                    break;
+                case FILTER_ACCURACY:
+                    if (accuracy > 0) {
+                        chain.addFilter(R.string.statistics_filter_accuracy, new LocationFilter.Accuracy(accuracy));
+                    }
+                    break;
+                case FILTER_SPEED:
+                    if (speed > 0) {
+                        chain.addFilter(R.string.statistics_filter_speed, new LocationFilter.Speed(speed));
+                    }
+                    break;
+                case FILTER_JITTER:
+                    if (jitter > 0) {
+                        chain.addFilter(R.string.statistics_filter_jitter, new LocationFilter.Jitter(jitter, interval));
+                    }
+                    break;
+                case FILTER_KALMAN:
+                    if (kalman) {
+                        chain.kalmanFilter = new KalmanFilter();
+                        chain.addFilter(R.string.statistics_filter_kalman, chain.kalmanFilter);
+                    }
+                    break;
+                default:
+                    if (!name.trim().isEmpty()) {
+                        Log.w(TAG, "unknown filter " + name);
+                    }
+                    break;
+            }
+        }
+        if (tolerance > 0) {
+            chain.addFilter(R.string.statistics_filter_predicted, new LocationFilter.DeadReckoning(tolerance, interval));
+        } else {
+            chain.addFilter(R.string.statistics_filter_report, new LocationFilter.Report(interval, distance, angle));
+        }
+        return chain;
+    }
+
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2018 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.client;
+
+import android.location.Location;
+
+public class KalmanFilter extends LocationFilter {
+
+    //
+    // Constant velocity model with independent east and north axes. Both
+    // axes share the same time step and noise, so a single 2x2 covariance
+    // is enough. Positions are kept in meters relative to a reference point
+    // and all state is primitive, so an update does not allocate.
+    //
+
+    private static final double EARTH_RADIUS = 6371000.0;
+    private static final double ACCELERATION_NOISE = 2.0;
+    private static final double INITIAL_VELOCITY_VARIANCE = 100.0;
+    private static final long RESET_TIME = 60 * 1000;
+
+    private boolean initialized;
+    private long time;
+
+    private double referenceLatitude;
+    private double referenceLongitude;
+    private double metersPerDegreeLatitude;
+    private double metersPerDegreeLongitude;
+
+    private double x;
+    private double y;
+    private double vx;
+    private double vy;
+
+    private double p00;
+    private double p01;
+    private double p11;
+
+    private double rawLatitude;
+    private double rawLongitude;
+
+    public double getRawLatitude() {
+        return rawLatitude;
+    }
+
+    public double getRawLongitude() {
+        return rawLongitude;
+    }
+
+    private static double getVariance(Location location) {
+        double accuracy = location.hasAccuracy() ? Math.max(1, location.getAccuracy()) : 50;
+        return accuracy * accuracy;
+    }
+
+    private void reset(Location location, double variance) {
+        referenceLatitude = location.getLatitude();
+        referenceLongitude = location.getLongitude();
+        metersPerDegreeLatitude = Math.toRadians(EARTH_RADIUS);
+        metersPerDegreeLongitude = metersPerDegreeLatitude * Math.cos(Math.toRadians(referenceLatitude));
+
+        x = 0;
+        y = 0;
+        if (location.hasSpeed() && location.hasBearing()) {
+            double bearing = Math.toRadians(location.getBearing());
+            vx = location.getSpeed() * Math.sin(bearing);
+            vy = location.getSpeed() * Math.cos(bearing);
+        } else {
+            vx = 0;
+            vy = 0;
+        }
+
+        p00 = variance;
+        p01 = 0;
+        p11 = INITIAL_VELOCITY_VARIANCE;
+
+        time = location.getTime();
+        initialized = true;
+    }
+
+    @Override
+    public boolean accept(Location location, Location last) {
+        rawLatitude = location.getLatitude();
+        rawLongitude = location.getLongitude();
+
+        double variance = getVariance(location);
+        double dt = (location.getTime() - time) / 1000.0;
+        if (!initialized || dt * 1000 > RESET_TIME || dt < 0) {
+            reset(location, variance);
+            return true;
+        }
+
+        if (dt > 0) {
+            x += vx * dt;
+            y += vy * dt;
+            double q = ACCELERATION_NOISE * ACCELERATION_NOISE;
+            p00 += 2 * dt * p01 + dt * dt * p11 + q * dt * dt * dt / 3;
+            p01 += dt * p11 + q * dt * dt / 2;
+            p11 += q * dt;
+        }
+
+        double s = p00 + variance;
+        double k0 = p00 / s;
+        double k1 = p01 / s;
+
+        double mx = (rawLongitude - referenceLongitude) * metersPerDegreeLongitude;
+        double my = (rawLatitude - referenceLatitude) * metersPerDegreeLatitude;
+        double dx = mx - x;
+        double dy = my - y;
+        x += k0 * dx;
+        y += k0 * dy;
+        vx += k1 * dx;
+        vy += k1 * dy;
+
+        p11 -= k1 * p01;
+        p01 *= 1 - k0;
+        p00 *= 1 - k0;
+
+        time = location.getTime();
+
+        location.setLatitude(referenceLatitude + y / metersPerDegreeLatitude);
+        location.setLongitude(referenceLongitude + x / metersPerDegreeLongitude);
+        location.setAccuracy((float) Math.sqrt(p00));
+        return true;
+    }
+
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2018 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.client;
+
+import android.location.Location;
+
+public abstract class LocationFilter {
+
+    // Return false to drop the location, last is the last accepted location or null
+    public abstract boolean accept(Location location, Location last);
+
+    public static double getBearingDelta(double bearing1, double bearing2) {
+        double delta = Math.abs(bearing1 - bearing2) % 360;
+        return delta > 180 ? 360 - delta : delta;
+    }
+
+    public static class Duplicate extends LocationFilter {
+
+        @Override
+        public boolean accept(Location location, Location last) {
+            return last == null || location.getTime() > last.getTime();
+        }
+
+    }
+
+    public static class Accuracy extends LocationFilter {
+
+        private final double maxAccuracy;
+
+        public Accuracy(double maxAccuracy) {
+            this.maxAccuracy = maxAccuracy;
+        }
+
+        @Override
+        public boolean accept(Location location, Location last) {
+            return !location.hasAccuracy() || location.getAccuracy() <= maxAccuracy;
+        }
+
+    }
+
+    public static class Speed extends LocationFilter {
+
+        private final double maxSpeed;
+
+        public Speed(double maxSpeed) {
+            this.maxSpeed = maxSpeed;
+        }
+
+        @Override
+        public boolean accept(Location location, Location last) {
+            if (last == null || location.getTime() <= last.getTime()) {
+                return true;
+            }
+            double speed = location.distanceTo(last) * 1000.0 / (location.getTime() - last.getTime());
+            return speed <= maxSpeed;
+        }
+
+    }
+
+    public static class Jitter extends LocationFilter {
+
+        private final double radius;
+        private final long interval;
+
+        public Jitter(double radius, long interval) {
+            this.radius = radius;
+            this.interval = interval;
+        }
+
+        @Override
+        public boolean accept(Location location, Location last) {
+            return last == null
+                    || location.getTime() - last.getTime() >= interval
+                    || location.distanceTo(last) >= radius;
+        }
+
+    }
+
+    public static class Report extends LocationFilter {
+
+        private final long interval;
+        private final double distance;
+        private final double angle;
+
+        public Report(long interval, double distance, double angle) {
+            this.interval = interval;
+            this.distance = distance;
+            this.angle = angle;
+        }
+
+        @Override
+        public boolean accept(Location location, Location last) {
+            return last == null
+                    || location.getTime() - last.getTime() >= interval
+                    || distance > 0 && location.distanceTo(last) >= distance
+                    || angle > 0 && getBearingDelta(location.getBearing(), last.getBearing()) >= angle;
+        }
+
+    }
+
+    //
+    // Both sides extrapolate from the last sent location using its speed and
+    // course. A location is only sent when it deviates from the prediction by
+    // more than the tolerance or when the maximum silence time has passed.
+    //
+
+    public static class DeadReckoning extends LocationFilter {
+
+        private static final double EARTH_RADIUS = 6371000.0;
+
+        private final double tolerance;
+        private final long maxSilence;
+        private final float[] results = new float[1];
+
+        public DeadReckoning(double tolerance, long maxSilence) {
+            this.tolerance = tolerance;
+            this.maxSilence = maxSilence;
+        }
+
+        @Override
+        public boolean accept(Location location, Location last) {
+            if (last == null || location.getTime() - last.getTime() >= maxSilence) {
+                return true;
+            }
+            double distance = last.getSpeed() * (location.getTime() - last.getTime()) / 1000.0;
+            double bearing = Math.toRadians(last.getBearing());
+            double latitude = last.getLatitude()
+                    + Math.toDegrees(distance * Math.cos(bearing) / EARTH_RADIUS);
+            double longitude = last.getLongitude()
+                    + Math.toDegrees(distance * Math.sin(bearing) / (EARTH_RADIUS
+                    * Math.cos(Math.toRadians(last.getLatitude()))));
+            Location.distanceBetween(
+                    latitude, longitude, location.getLatitude(), location.getLongitude(), results);
+            return results[0] > tolerance;
+        }
+
+    }
+
+}
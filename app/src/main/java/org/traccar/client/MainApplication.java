@@ -1,5 +1,5 @@
 /*
- * Copyright 2016 - 2017 Anton Tananaev (anton.tananaev@gmail.com)
+ * Copyright 2016 - 2018 Anton Tananaev (anton.tananaev@gmail.com)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -43,6 +43,10 @@ public class MainApplication extends Application {
         }
     }
 
+    public PositionProvider createPositionProvider(Context context, PositionProvider.PositionListener listener) {
+        return new AndroidPositionProvider(context, listener);
+    }
+
     @TargetApi(Build.VERSION_CODES.O)
     private void registerChannel() {
         NotificationChannel channel = new NotificationChannel(
@@ -60,6 +60,32 @@ public class MainFragment extends PreferenceFragment implements OnSharedPreferen
     public static final String KEY_ANGLE = "angle";
     public static final String KEY_ACCURACY = "accuracy";
     public static final String KEY_STATUS = "status";
+    public static final String KEY_BATCH_SIZE = "batch_size";
+    public static final String KEY_BATCH_BYTES = "batch_bytes";
+    public static final String KEY_WINDOW = "window";
+    public static final String KEY_LIVE_LANE = "live_lane";
+    public static final String KEY_BULK_SHARE = "bulk_share";
+    public static final String KEY_FORMAT = "format";
+    public static final String KEY_ENCODING = "encoding";
+    public static final String KEY_ENCODING_REJECTED = "encoding_rejected";
+    public static final String KEY_BUFFER_SIZE = "buffer_size";
+    public static final String KEY_BUFFER_TIME = "buffer_time";
+    public static final String KEY_QUOTA_ROWS = "quota_rows";
+    public static final String KEY_QUOTA_SIZE = "quota_size";
+    public static final String KEY_EVICTION = "eviction";
+    public static final String KEY_STORE = "store";
+    public static final String KEY_DEVICE_CHANGE = "device_change";
+    public static final String KEY_ADAPTIVE = "adaptive";
+    public static final String KEY_FILTER_ORDER = "filter_order";
+    public static final String KEY_FILTER_ACCURACY = "filter_accuracy";
+    public static final String KEY_FILTER_SPEED = "filter_speed";
+    public static final String KEY_FILTER_JITTER = "filter_jitter";
+    public static final String KEY_KALMAN = "kalman";
+    public static final String KEY_DEAD_RECKONING = "dead_reckoning";
+    public static final String KEY_SLEEP = "sleep";
+    public static final String KEY_BATCH_DELAY = "batch_delay";
+
+    private static final String KEY_ADVANCED = "advanced";
 
     private static final int PERMISSIONS_REQUEST_LOCATION = 2;
 
@@ -84,7 +110,7 @@ public class MainFragment extends PreferenceFragment implements OnSharedPreferen
         findPreference(KEY_DEVICE).setOnPreferenceChangeListener(new Preference.OnPreferenceChangeListener() {
             @Override
             public boolean onPreferenceChange(Preference preference, Object newValue) {
-                return newValue != null && !newValue.equals("");
+                return newValue != null && !newValue.equals("") && SegmentStore.isValidDevice(newValue.toString());
             }
         });
         findPreference(KEY_URL).setOnPreferenceChangeListener(new Preference.OnPreferenceChangeListener() {
@@ -125,6 +151,20 @@ public class MainFragment extends PreferenceFragment implements OnSharedPreferen
         };
         findPreference(KEY_DISTANCE).setOnPreferenceChangeListener(numberValidationListener);
         findPreference(KEY_ANGLE).setOnPreferenceChangeListener(numberValidationListener);
+        findPreference(KEY_BATCH_SIZE).setOnPreferenceChangeListener(numberValidationListener);
+        findPreference(KEY_BATCH_BYTES).setOnPreferenceChangeListener(numberValidationListener);
+        findPreference(KEY_WINDOW).setOnPreferenceChangeListener(numberValidationListener);
+        findPreference(KEY_BULK_SHARE).setOnPreferenceChangeListener(numberValidationListener);
+        findPreference(KEY_BUFFER_SIZE).setOnPreferenceChangeListener(numberValidationListener);
+        findPreference(KEY_BUFFER_TIME).setOnPreferenceChangeListener(numberValidationListener);
+        findPreference(KEY_QUOTA_ROWS).setOnPreferenceChangeListener(numberValidationListener);
+        findPreference(KEY_QUOTA_SIZE).setOnPreferenceChangeListener(numberValidationListener);
+        findPreference(KEY_FILTER_ACCURACY).setOnPreferenceChangeListener(numberValidationListener);
+        findPreference(KEY_FILTER_SPEED).setOnPreferenceChangeListener(numberValidationListener);
+        findPreference(KEY_FILTER_JITTER).setOnPreferenceChangeListener(numberValidationListener);
+        findPreference(KEY_DEAD_RECKONING).setOnPreferenceChangeListener(numberValidationListener);
+        findPreference(KEY_SLEEP).setOnPreferenceChangeListener(numberValidationListener);
+        findPreference(KEY_BATCH_DELAY).setOnPreferenceChangeListener(numberValidationListener);
 
         alarmManager = (AlarmManager) getActivity().getSystemService(Context.ALARM_SERVICE);
         alarmIntent = PendingIntent.getBroadcast(getActivity(), 0, new Intent(getActivity(), AutostartReceiver.class), 0);
@@ -169,6 +209,7 @@ public class MainFragment extends PreferenceFragment implements OnSharedPreferen
         findPreference(KEY_DISTANCE).setEnabled(enabled);
         findPreference(KEY_ANGLE).setEnabled(enabled);
         findPreference(KEY_ACCURACY).setEnabled(enabled);
+        findPreference(KEY_ADVANCED).setEnabled(enabled);
     }
 
     @Override
@@ -181,6 +222,34 @@ public class MainFragment extends PreferenceFragment implements OnSharedPreferen
             }
         } else if (key.equals(KEY_DEVICE)) {
             findPreference(KEY_DEVICE).setSummary(sharedPreferences.getString(KEY_DEVICE, null));
+            changeDevice(sharedPreferences);
+        } else if (key.equals(KEY_ENCODING)) {
+            sharedPreferences.edit().remove(KEY_ENCODING_REJECTED).apply();
+        }
+    }
+
+    private void changeDevice(SharedPreferences sharedPreferences) {
+        String mode = sharedPreferences.getString(
+                KEY_DEVICE_CHANGE, TrackingController.DEVICE_CHANGE_DISCARD);
+        if (!mode.equals(TrackingController.DEVICE_CHANGE_KEEP)) {
+            final Context context = getActivity().getApplicationContext();
+            final String deviceId = sharedPreferences.getString(KEY_DEVICE, null);
+            final boolean retag = mode.equals(TrackingController.DEVICE_CHANGE_RETAG);
+            // Store is opened on the store thread, as it may need a migration
+            new StoreTask<Void>(new PositionStore.StoreHandler<Void>() {
+                @Override
+                public void onComplete(boolean success, Void result) {
+                    if (!success) {
+                        Log.w(TAG, "device change failed");
+                    }
+                }
+            }) {
+                @Override
+                protected Void executeMethod() {
+                    TrackingController.getPositionStore(context).changeDevice(deviceId, retag);
+                    return null;
+                }
+            }.execute();
         }
     }
 
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2018 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.client;
+
+import android.location.Location;
+
+public class MotionClassifier {
+
+    public enum State {
+        STATIONARY, WALKING, DRIVING
+    }
+
+    //
+    // Speed thresholds in m/s. Entering a faster state needs a higher speed
+    // than staying in it, and every change has to be confirmed by several
+    // consecutive fixes, so the state does not flap around a threshold.
+    //
+
+    private static final double WALKING_SPEED_ENTER = 0.7;
+    private static final double WALKING_SPEED_EXIT = 0.3;
+    private static final double DRIVING_SPEED_ENTER = 4.5;
+    private static final double DRIVING_SPEED_EXIT = 2.5;
+
+    private static final int CONFIRM_COUNT = 2;
+    private static final double STATIONARY_RADIUS = 25;
+    private static final long STATIONARY_DELAY = 2 * 60 * 1000;
+
+    private State state = State.DRIVING;
+    private State pending;
+    private int pendingCount;
+
+    private Location lastLocation;
+    private Location anchor;
+
+    public State getState() {
+        return state;
+    }
+
+    private double getSpeed(Location location) {
+        if (location.hasSpeed()) {
+            return location.getSpeed();
+        }
+        if (lastLocation != null && location.getTime() > lastLocation.getTime()) {
+            double displacement = location.distanceTo(lastLocation)
+                    - location.getAccuracy() - lastLocation.getAccuracy();
+            return Math.max(0, displacement) * 1000 / (location.getTime() - lastLocation.getTime());
+        }
+        return 0;
+    }
+
+    private State classify(double speed) {
+        boolean moving = state != State.STATIONARY;
+        if (speed >= DRIVING_SPEED_ENTER || state == State.DRIVING && speed >= DRIVING_SPEED_EXIT) {
+            return State.DRIVING;
+        } else if (speed >= WALKING_SPEED_ENTER || moving && speed >= WALKING_SPEED_EXIT) {
+            return State.WALKING;
+        } else {
+            return State.STATIONARY;
+        }
+    }
+
+    public State update(Location location) {
+        State candidate = classify(getSpeed(location));
+        lastLocation = location;
+
+        if (candidate == State.STATIONARY) {
+            if (anchor == null || location.distanceTo(anchor) > STATIONARY_RADIUS + location.getAccuracy()) {
+                anchor = location;
+                if (state == State.STATIONARY) {
+                    candidate = State.WALKING;
+                }
+            }
+        } else {
+            anchor = null;
+        }
+
+        if (candidate == state) {
+            pending = null;
+            pendingCount = 0;
+        } else if (candidate == pending) {
+            pendingCount += 1;
+        } else {
+            pending = candidate;
+            pendingCount = 1;
+        }
+
+        if (pending != null && pendingCount >= CONFIRM_COUNT && (pending != State.STATIONARY
+                || anchor != null && location.getTime() - anchor.getTime() >= STATIONARY_DELAY)) {
+            state = pending;
+            pending = null;
+            pendingCount = 0;
+        }
+
+        return state;
+    }
+
+}
@@ -21,6 +21,7 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
+import android.os.Handler;
 import android.util.Log;
 
 public class NetworkManager extends BroadcastReceiver {
@@ -49,7 +50,7 @@ public class NetworkManager extends BroadcastReceiver {
     public void start() {
         IntentFilter filter = new IntentFilter();
         filter.addAction(ConnectivityManager.CONNECTIVITY_ACTION);
-        context.registerReceiver(this, filter);
+        context.registerReceiver(this, filter, null, new Handler());
     }
 
     public void stop() {
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2018 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.client;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.ConnectionPool;
+import okhttp3.EventListener;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.concurrent.TimeUnit;
+
+public class PooledTransport implements RequestManager.Transport {
+
+    private static final int MAX_IDLE_CONNECTIONS = 4;
+    private static final long KEEP_ALIVE_DURATION = 5 * 60 * 1000;
+
+    private static final byte[] EMPTY_BODY = new byte[0];
+
+    private static class StatisticsListener extends EventListener {
+
+        private boolean connected;
+
+        @Override
+        public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+            connected = true;
+            Statistics.increment(R.string.statistics_connections);
+        }
+
+        @Override
+        public void secureConnectStart(Call call) {
+            Statistics.increment(R.string.statistics_handshakes);
+        }
+
+        @Override
+        public void connectionAcquired(Call call, Connection connection) {
+            if (!connected) {
+                Statistics.increment(R.string.statistics_reused);
+            }
+            Statistics.set(R.string.statistics_protocol, connection.protocol().toString());
+        }
+
+    }
+
+    private final OkHttpClient client = new OkHttpClient.Builder()
+            .connectTimeout(RequestManager.TIMEOUT, TimeUnit.MILLISECONDS)
+            .readTimeout(RequestManager.TIMEOUT, TimeUnit.MILLISECONDS)
+            .writeTimeout(RequestManager.TIMEOUT, TimeUnit.MILLISECONDS)
+            .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_DURATION, TimeUnit.MILLISECONDS))
+            .eventListenerFactory(new EventListener.Factory() {
+                @Override
+                public EventListener create(Call call) {
+                    return new StatisticsListener();
+                }
+            })
+            .build();
+
+    @Override
+    public RequestManager.Response send(RequestManager.Request request) throws IOException {
+        RequestBody body;
+        if (request.getBody() != null) {
+            body = RequestBody.create(MediaType.parse(request.getContentType()), request.getBody());
+        } else {
+            body = RequestBody.create(null, EMPTY_BODY);
+        }
+
+        okhttp3.Request.Builder builder = new okhttp3.Request.Builder()
+                .url(request.getUrl())
+                .post(body);
+        if (request.getContentEncoding() != null) {
+            builder.header("Content-Encoding", request.getContentEncoding());
+        }
+
+        Response response = client.newCall(builder.build()).execute();
+        try {
+            if (response.body() != null) {
+                response.body().bytes();
+            }
+        } finally {
+            response.close();
+        }
+        return new RequestManager.Response(
+                response.code(), RequestManager.parseRetryAfter(response.header("Retry-After")));
+    }
+
+    @Override
+    public void warmUp(String url) throws IOException {
+        client.newCall(new okhttp3.Request.Builder().url(url).head().build()).execute().close();
+    }
+
+}
@@ -26,6 +26,12 @@ public class Position {
     public Position() {
     }
 
+    public Position(String deviceId, Location location, DeviceState deviceState) {
+        this(deviceId, location, deviceState.getBatteryLevel());
+        charging = deviceState.isCharging();
+        network = deviceState.getNetwork();
+    }
+
     public Position(String deviceId, Location location, double battery) {
         this.deviceId = deviceId;
         time = new Date(location.getTime());
@@ -153,4 +159,54 @@ public class Position {
         this.mock = mock;
     }
 
+    private boolean cached;
+
+    public boolean getCached() {
+        return cached;
+    }
+
+    public void setCached(boolean cached) {
+        this.cached = cached;
+    }
+
+    private boolean charging;
+
+    public boolean getCharging() {
+        return charging;
+    }
+
+    public void setCharging(boolean charging) {
+        this.charging = charging;
+    }
+
+    private int network;
+
+    public int getNetwork() {
+        return network;
+    }
+
+    public void setNetwork(int network) {
+        this.network = network;
+    }
+
+    private Double rawLatitude;
+
+    public Double getRawLatitude() {
+        return rawLatitude;
+    }
+
+    public void setRawLatitude(Double rawLatitude) {
+        this.rawLatitude = rawLatitude;
+    }
+
+    private Double rawLongitude;
+
+    public Double getRawLongitude() {
+        return rawLongitude;
+    }
+
+    public void setRawLongitude(Double rawLongitude) {
+        this.rawLongitude = rawLongitude;
+    }
+
 }
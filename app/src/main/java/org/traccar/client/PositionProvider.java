@@ -1,5 +1,5 @@
 /*
- * Copyright 2013 - 2017 Anton Tananaev (anton.tananaev@gmail.com)
+ * Copyright 2013 - 2018 Anton Tananaev (anton.tananaev@gmail.com)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -15,50 +15,74 @@
  */
 package org.traccar.client;
 
-import android.annotation.SuppressLint;
 import android.content.Context;
-import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.SharedPreferences;
-import android.location.Criteria;
 import android.location.Location;
-import android.location.LocationListener;
 import android.location.LocationManager;
-import android.os.BatteryManager;
-import android.os.Bundle;
+import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.util.Log;
 import android.widget.Toast;
 
-public class PositionProvider implements LocationListener {
+import java.util.ArrayList;
+import java.util.List;
+
+public abstract class PositionProvider {
 
     private static final String TAG = PositionProvider.class.getSimpleName();
 
-    private static final int MINIMUM_INTERVAL = 1000;
+    protected static final int MINIMUM_INTERVAL = 1000;
+    protected static final int SLEEP_INTERVAL = 5 * 60 * 1000;
+
+    private static final int WALKING_INTERVAL = 5 * 1000;
+    private static final int STATIONARY_INTERVAL = 60 * 1000;
+    private static final double SLEEP_RADIUS = 50;
+    private static final float SLEEP_ACCURACY = 100;
+    private static final int WARM_START_AGE = 30 * 60 * 1000;
+    private static final float WARM_START_ACCURACY = 200;
+    private static final int BURST_TIMEOUT = 30 * 1000;
 
     public interface PositionListener {
         void onPositionUpdate(Position position);
+        void onPositionBatch(List<Position> positions);
     }
 
     private final PositionListener listener;
 
-    private final Context context;
+    protected final Context context;
     private SharedPreferences preferences;
-    private LocationManager locationManager;
 
     private String deviceId;
     private long interval;
     private double distance;
     private double angle;
+    private boolean adaptive;
+    private long sleepDelay;
+    protected long batchDelay;
+
+    private Handler handler;
+    private List<Position> batch = new ArrayList<>();
+
+    private long activeInterval;
+    private Location anchor;
+    private boolean sleeping;
+    private long sleepStart;
 
-    private Location lastLocation;
+    private boolean warm;
+    private boolean burst;
+    private long startTime;
+
+    private DeviceState deviceState;
+    private MotionClassifier motionClassifier = new MotionClassifier();
+    private FilterChain filterChain;
 
     public PositionProvider(Context context, PositionListener listener) {
         this.context = context;
         this.listener = listener;
 
-        locationManager = (LocationManager) context.getSystemService(Context.LOCATION_SERVICE);
+        deviceState = DeviceState.getInstance(context);
 
         preferences = PreferenceManager.getDefaultSharedPreferences(context);
 
@@ -66,77 +90,264 @@ public class PositionProvider implements LocationListener {
         interval = Long.parseLong(preferences.getString(MainFragment.KEY_INTERVAL, "600")) * 1000;
         distance = Integer.parseInt(preferences.getString(MainFragment.KEY_DISTANCE, "0"));
         angle = Integer.parseInt(preferences.getString(MainFragment.KEY_ANGLE, "0"));
+        adaptive = preferences.getBoolean(MainFragment.KEY_ADAPTIVE, false);
+        batchDelay = Long.parseLong(preferences.getString(MainFragment.KEY_BATCH_DELAY, "0")) * 1000;
+        sleepDelay = Long.parseLong(preferences.getString(MainFragment.KEY_SLEEP, "0")) * 60 * 1000;
+
+        filterChain = FilterChain.create(preferences, interval, distance, angle);
+    }
+
+    //
+    // Location sources implement continuous updates with the given interval
+    // and accuracy (high, medium or low), low power updates for sleep mode
+    // and removal of both. Updates are delivered to processLocation on the
+    // thread that started them.
+    //
+
+    protected abstract void requestUpdates(long interval, String accuracy);
+
+    protected abstract void requestSleepUpdates();
+
+    protected abstract void removeUpdates();
+
+    private void requestUpdates(MotionClassifier.State motion) {
+        long minTime = distance > 0 || angle > 0 ? MINIMUM_INTERVAL : interval;
+        String accuracy = preferences.getString(MainFragment.KEY_ACCURACY, "medium");
+        if (adaptive) {
+            switch (motion) {
+                case STATIONARY:
+                    minTime = Math.max(minTime, STATIONARY_INTERVAL);
+                    accuracy = "low";
+                    break;
+                case WALKING:
+                    minTime = Math.max(minTime, WALKING_INTERVAL);
+                    break;
+                default:
+                    break;
+            }
+        }
+        activeInterval = minTime;
+        requestUpdates(minTime, accuracy);
+    }
+
+    //
+    // Sleep mode replaces continuous updates with passive and coarse network
+    // locations once the device stays within a small region for the configured
+    // time, and resumes tracking as soon as a location falls outside of it.
+    // Accuracy widens the region by at most SLEEP_ACCURACY, so a coarse network
+    // fix far enough away still wakes tracking. Waking on a coarse fix keeps
+    // the anchor, so if the next accurate fix is back within the region, sleep
+    // resumes right away.
+    //
+
+    private void startSleep() {
+        Log.i(TAG, "sleep start");
+        removeUpdates();
+        requestSleepUpdates();
+        sleeping = true;
+        sleepStart = SystemClock.elapsedRealtime();
+    }
+
+    private void finishSleep() {
+        long duration = SystemClock.elapsedRealtime() - sleepStart;
+        Statistics.add(R.string.statistics_sleep, duration / 1000);
+        Statistics.add(R.string.statistics_wakeups, duration / Math.max(activeInterval, MINIMUM_INTERVAL));
+        sleeping = false;
+    }
+
+    private boolean updateSleep(Location location) {
+        if (sleeping) {
+            if (location.distanceTo(anchor) <= SLEEP_RADIUS + Math.min(location.getAccuracy(), SLEEP_ACCURACY)) {
+                return true;
+            }
+            Log.i(TAG, "sleep finish");
+            finishSleep();
+            if (location.getAccuracy() <= SLEEP_ACCURACY) {
+                anchor = new Location(location);
+            }
+            try {
+                removeUpdates();
+                requestUpdates(motionClassifier.getState());
+            } catch (RuntimeException e) {
+                Log.w(TAG, e);
+            }
+        } else if (anchor == null || location.distanceTo(anchor) > SLEEP_RADIUS
+                && (location.getAccuracy() <= SLEEP_ACCURACY
+                || location.distanceTo(anchor) > SLEEP_RADIUS + SLEEP_ACCURACY)) {
+            anchor = new Location(location);
+        } else if (location.getTime() - anchor.getTime() >= sleepDelay) {
+            try {
+                startSleep();
+                return true;
+            } catch (RuntimeException e) {
+                Log.w(TAG, e);
+            }
+        }
+        return false;
+    }
+
+    //
+    // Warm start reports the freshest accurate last known location right away,
+    // flagged as cached, and requests high accuracy updates until the first
+    // fix or BURST_TIMEOUT before switching to the regular request.
+    //
+
+    public static Location getLastKnownLocation(Context context) {
+        return getLastKnownLocation(context, WARM_START_AGE, WARM_START_ACCURACY);
+    }
+
+    public static Location getLastKnownLocation(Context context, long maxAge, float maxAccuracy) {
+        LocationManager locationManager = (LocationManager) context.getSystemService(Context.LOCATION_SERVICE);
+        Location result = null;
+        for (String provider : locationManager.getProviders(true)) {
+            Location location;
+            try {
+                location = locationManager.getLastKnownLocation(provider);
+            } catch (SecurityException e) {
+                continue;
+            }
+            if (location != null
+                    && System.currentTimeMillis() - location.getTime() <= maxAge
+                    && (!location.hasAccuracy() || location.getAccuracy() <= maxAccuracy)
+                    && (result == null || location.getTime() > result.getTime())) {
+                result = location;
+            }
+        }
+        return result;
+    }
+
+    private String getStartDelay() {
+        return String.valueOf((SystemClock.elapsedRealtime() - startTime) / 1000.0);
+    }
+
+    private void warmStart() {
+        Location location = getLastKnownLocation(context);
+        if (location != null) {
+            Log.i(TAG, "location cached");
+            Position position = new Position(deviceId, location, deviceState);
+            position.setCached(true);
+            Statistics.set(R.string.statistics_first_position, getStartDelay());
+            warm = true;
+            listener.onPositionUpdate(position);
+        }
+    }
+
+    private final Runnable burstRunnable = new Runnable() {
+        @Override
+        public void run() {
+            finishBurst();
+        }
+    };
+
+    private void finishBurst() {
+        handler.removeCallbacks(burstRunnable);
+        burst = false;
+        try {
+            removeUpdates();
+            requestUpdates(motionClassifier.getState());
+        } catch (RuntimeException e) {
+            Log.w(TAG, e);
+        }
     }
 
-    @SuppressLint("MissingPermission")
     public void startUpdates() {
+        handler = new Handler(Looper.myLooper());
+        startTime = SystemClock.elapsedRealtime();
+        warm = false;
+        warmStart();
         try {
-            locationManager.requestLocationUpdates(
-                    distance > 0 || angle > 0 ? MINIMUM_INTERVAL : interval, 0,
-                    getCriteria(preferences.getString(MainFragment.KEY_ACCURACY, "medium")),
-                    this, Looper.myLooper());
+            requestUpdates(MINIMUM_INTERVAL, "high");
+            burst = true;
+            handler.postDelayed(burstRunnable, BURST_TIMEOUT);
         } catch (RuntimeException e) {
             Toast.makeText(context, e.getMessage(), Toast.LENGTH_LONG).show();
         }
     }
 
-    public static Criteria getCriteria(String accuracy) {
-        Criteria criteria = new Criteria();
-        switch (accuracy) {
-            case "high":
-                criteria.setHorizontalAccuracy(Criteria.ACCURACY_HIGH);
-                criteria.setPowerRequirement(Criteria.POWER_HIGH);
-                break;
-            case "low":
-                criteria.setHorizontalAccuracy(Criteria.ACCURACY_LOW);
-                criteria.setPowerRequirement(Criteria.POWER_LOW);
-                break;
-            default:
-                criteria.setHorizontalAccuracy(Criteria.ACCURACY_MEDIUM);
-                criteria.setPowerRequirement(Criteria.POWER_MEDIUM);
-                break;
-        }
-        return criteria;
-    }
-
-    @Override
-    public void onLocationChanged(Location location) {
-        if (location != null && (lastLocation == null
-                || location.getTime() - lastLocation.getTime() >= interval
-                || distance > 0 && location.distanceTo(lastLocation) >= distance
-                || angle > 0 && Math.abs(location.getBearing() - lastLocation.getBearing()) >= angle)) {
+    private void updateMotion(Location location) {
+        MotionClassifier.State previous = motionClassifier.getState();
+        MotionClassifier.State motion = motionClassifier.update(location);
+        if (motion != previous) {
+            Log.i(TAG, "motion " + previous + " -> " + motion);
+            Statistics.set(R.string.statistics_motion, motion.toString());
+            try {
+                removeUpdates();
+                requestUpdates(motion);
+            } catch (RuntimeException e) {
+                Log.w(TAG, e);
+            }
+        }
+    }
+
+    protected void processLocation(Location location) {
+        if (location != null && burst) {
+            Statistics.set(R.string.statistics_first_fix, getStartDelay());
+            if (!warm) {
+                Statistics.set(R.string.statistics_first_position, getStartDelay());
+            }
+            finishBurst();
+        }
+        if (location != null && sleepDelay > 0 && updateSleep(location)) {
+            Log.i(TAG, "location asleep");
+            return;
+        }
+        if (location != null && adaptive) {
+            updateMotion(location);
+        }
+        if (location != null && filterChain.accept(location)) {
             Log.i(TAG, "location new");
-            lastLocation = location;
-            listener.onPositionUpdate(new Position(deviceId, location, getBatteryLevel(context)));
+            Position position = new Position(deviceId, location, deviceState);
+            KalmanFilter kalmanFilter = filterChain.getKalmanFilter();
+            if (kalmanFilter != null) {
+                position.setRawLatitude(kalmanFilter.getRawLatitude());
+                position.setRawLongitude(kalmanFilter.getRawLongitude());
+            }
+            if (batchDelay > 0) {
+                batch.add(position);
+                if (batch.size() == 1) {
+                    handler.postDelayed(batchRunnable, batchDelay);
+                }
+            } else {
+                listener.onPositionUpdate(position);
+            }
         } else {
             Log.i(TAG, location != null ? "location ignored" : "location nil");
         }
     }
 
-    @Override
-    public void onStatusChanged(String provider, int status, Bundle extras) {
-    }
+    //
+    // Batching mode collects accepted locations for batchDelay and hands them
+    // over together, so the controller stores each batch in one transaction
+    // instead of waking up to send every location on its own.
+    //
 
-    @Override
-    public void onProviderEnabled(String provider) {
-    }
+    private final Runnable batchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            deliverBatch();
+        }
+    };
 
-    @Override
-    public void onProviderDisabled(String provider) {
+    protected void deliverBatch() {
+        handler.removeCallbacks(batchRunnable);
+        if (!batch.isEmpty()) {
+            List<Position> positions = batch;
+            batch = new ArrayList<>();
+            Statistics.increment(R.string.statistics_location_batches);
+            listener.onPositionBatch(positions);
+        }
     }
 
     public void stopUpdates() {
-        locationManager.removeUpdates(this);
-    }
-
-    public static double getBatteryLevel(Context context) {
-        Intent batteryIntent = context.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
-        if (batteryIntent != null) {
-            int level = batteryIntent.getIntExtra(BatteryManager.EXTRA_LEVEL, 0);
-            int scale = batteryIntent.getIntExtra(BatteryManager.EXTRA_SCALE, 1);
-            return (level * 100.0) / scale;
+        if (handler != null) {
+            handler.removeCallbacks(burstRunnable);
+            deliverBatch();
+        }
+        burst = false;
+        removeUpdates();
+        if (sleeping) {
+            finishSleep();
         }
-        return 0;
     }
 
 }
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2018 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.client;
+
+import java.util.List;
+
+public interface PositionStore {
+
+    interface StoreHandler<T> {
+        void onComplete(boolean success, T result);
+    }
+
+    //
+    // Positions are stored in fixed point to keep queued records small:
+    // coordinates in 1e-7 degrees, altitude and accuracy in decimeters,
+    // speed in 0.01 knots, course in 0.1 degrees and battery in 0.1 percent.
+    //
+
+    double COORDINATE_SCALE = 10000000.0;
+    double ALTITUDE_SCALE = 10.0;
+    double SPEED_SCALE = 100.0;
+    double COURSE_SCALE = 10.0;
+    double ACCURACY_SCALE = 10.0;
+    double BATTERY_SCALE = 10.0;
+
+    // Quota eviction frees space down to this percentage of the limit, so it
+    // does not run again on every following insert
+    int QUOTA_LOW_WATER = 90;
+
+    void setQuota(long maxRows, long maxBytes, EvictionPolicy evictionPolicy);
+
+    long getRows();
+
+    long getBytes();
+
+    void insertPositions(List<Position> positions);
+
+    void insertPositionsAsync(List<Position> positions, StoreHandler<Void> handler);
+
+    List<Position> selectPositions(long afterId, int limit);
+
+    void selectPositionsAsync(long afterId, int limit, StoreHandler<List<Position>> handler);
+
+    void deletePositions(long[] ids);
+
+    void deletePositionsAsync(long[] ids, StoreHandler<Void> handler);
+
+    // Discard positions of other devices or assign them to the given device
+    void changeDevice(String deviceId, boolean retag);
+
+    void changeDeviceAsync(String deviceId, boolean retag, StoreHandler<Void> handler);
+
+}
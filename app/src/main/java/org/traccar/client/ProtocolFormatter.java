@@ -1,5 +1,5 @@
 /*
- * Copyright 2012 - 2016 Anton Tananaev (anton.tananaev@gmail.com)
+ * Copyright 2012 - 2018 Anton Tananaev (anton.tananaev@gmail.com)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,17 +16,136 @@
 package org.traccar.client;
 
 import android.net.Uri;
+import android.util.Log;
+
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
 
 public class ProtocolFormatter {
 
+    public static final String FORMAT_TEXT = "text";
+    public static final String FORMAT_JSON = "json";
+
+    public static final String ENCODING_NONE = "none";
+    public static final String ENCODING_GZIP = "gzip";
+    public static final String ENCODING_DEFLATE = "deflate";
+
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
     public static String formatRequest(String url, Position position) {
         return formatRequest(url, position, null);
     }
 
     public static String formatRequest(String url, Position position, String alarm) {
-        Uri serverUrl = Uri.parse(url);
-        Uri.Builder builder = serverUrl.buildUpon()
-                .appendQueryParameter("id", position.getDeviceId())
+        Uri.Builder builder = Uri.parse(url).buildUpon();
+        appendParameters(builder, position, alarm);
+        return builder.build().toString();
+    }
+
+    public static String formatLine(Position position) {
+        Uri.Builder builder = new Uri.Builder();
+        appendParameters(builder, position, null);
+        return builder.build().getEncodedQuery();
+    }
+
+    public static String formatJson(Position position) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("{\"id\":").append(JSONObject.quote(position.getDeviceId()))
+                .append(",\"timestamp\":").append(position.getTime().getTime() / 1000)
+                .append(",\"lat\":").append(position.getLatitude())
+                .append(",\"lon\":").append(position.getLongitude())
+                .append(",\"speed\":").append(position.getSpeed())
+                .append(",\"bearing\":").append(position.getCourse())
+                .append(",\"altitude\":").append(position.getAltitude())
+                .append(",\"accuracy\":").append(position.getAccuracy())
+                .append(",\"batt\":").append(position.getBattery());
+
+        if (position.getMock()) {
+            builder.append(",\"mock\":true");
+        }
+
+        if (position.getCached()) {
+            builder.append(",\"cached\":true");
+        }
+
+        if (position.getCharging()) {
+            builder.append(",\"charge\":true");
+        }
+
+        String network = DeviceState.getNetworkName(position.getNetwork());
+        if (network != null) {
+            builder.append(",\"network\":").append(JSONObject.quote(network));
+        }
+
+        if (position.getRawLatitude() != null && position.getRawLongitude() != null) {
+            builder.append(",\"rawlat\":").append(position.getRawLatitude())
+                    .append(",\"rawlon\":").append(position.getRawLongitude());
+        }
+
+        return builder.append('}').toString();
+    }
+
+    public static String formatEntry(Position position, String format) {
+        return FORMAT_JSON.equals(format) ? formatJson(position) : formatLine(position);
+    }
+
+    public static RequestManager.Request formatRequest(
+            String url, List<String> entries, String format, String encoding) {
+        StringBuilder body = new StringBuilder();
+        String contentType;
+        if (FORMAT_JSON.equals(format)) {
+            contentType = "application/json";
+            body.append('[');
+            for (int i = 0; i < entries.size(); i++) {
+                if (i > 0) {
+                    body.append(',');
+                }
+                body.append(entries.get(i));
+            }
+            body.append(']');
+        } else {
+            contentType = "text/plain";
+            for (String entry : entries) {
+                body.append(entry).append('\n');
+            }
+        }
+
+        byte[] data = body.toString().getBytes(CHARSET);
+        if (ENCODING_GZIP.equals(encoding) || ENCODING_DEFLATE.equals(encoding)) {
+            try {
+                return new RequestManager.Request(url, compress(data, encoding), contentType, encoding);
+            } catch (IOException e) {
+                Log.w(ProtocolFormatter.class.getSimpleName(), e);
+            }
+        }
+        return new RequestManager.Request(url, data, contentType, null);
+    }
+
+    private static byte[] compress(byte[] data, String encoding) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream(data.length / 2);
+        OutputStream outputStream;
+        if (ENCODING_GZIP.equals(encoding)) {
+            outputStream = new GZIPOutputStream(result);
+        } else {
+            outputStream = new DeflaterOutputStream(result);
+        }
+        try {
+            outputStream.write(data);
+        } finally {
+            outputStream.close();
+        }
+        return result.toByteArray();
+    }
+
+    private static void appendParameters(Uri.Builder builder, Position position, String alarm) {
+        builder.appendQueryParameter("id", position.getDeviceId())
                 .appendQueryParameter("timestamp", String.valueOf(position.getTime().getTime() / 1000))
                 .appendQueryParameter("lat", String.valueOf(position.getLatitude()))
                 .appendQueryParameter("lon", String.valueOf(position.getLongitude()))
@@ -40,10 +159,26 @@ public class ProtocolFormatter {
             builder.appendQueryParameter("mock", String.valueOf(position.getMock()));
         }
 
+        if (position.getCached()) {
+            builder.appendQueryParameter("cached", String.valueOf(position.getCached()));
+        }
+
+        if (position.getCharging()) {
+            builder.appendQueryParameter("charge", String.valueOf(position.getCharging()));
+        }
+
+        String network = DeviceState.getNetworkName(position.getNetwork());
+        if (network != null) {
+            builder.appendQueryParameter("network", network);
+        }
+
+        if (position.getRawLatitude() != null && position.getRawLongitude() != null) {
+            builder.appendQueryParameter("rawlat", String.valueOf(position.getRawLatitude()))
+                    .appendQueryParameter("rawlon", String.valueOf(position.getRawLongitude()));
+        }
+
         if (alarm != null) {
             builder.appendQueryParameter("alarm", alarm);
         }
-
-        return builder.build().toString();
     }
 }
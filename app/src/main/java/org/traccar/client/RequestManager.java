@@ -15,69 +15,182 @@
  */
 package org.traccar.client;
 
-import android.os.AsyncTask;
+import android.os.Build;
+import android.os.Handler;
+import android.text.TextUtils;
 import android.util.Log;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 public class RequestManager {
 
-    private static final int TIMEOUT = 15 * 1000;
+    static final int TIMEOUT = 15 * 1000;
+
+    // Request was rejected before sending, so retrying it can not succeed
+    public static final int CODE_INVALID = -1;
 
     public interface RequestHandler {
-        void onComplete(boolean success);
+        void onComplete(boolean success, Response response);
+    }
+
+    public interface Transport {
+        Response send(Request request) throws IOException;
+        void warmUp(String url) throws IOException;
+    }
+
+    public static class Request {
+
+        private final String url;
+        private final byte[] body;
+        private final String contentType;
+        private final String contentEncoding;
+
+        public Request(String url) {
+            this(url, null, null, null);
+        }
+
+        public Request(String url, byte[] body, String contentType, String contentEncoding) {
+            this.url = url;
+            this.body = body;
+            this.contentType = contentType;
+            this.contentEncoding = contentEncoding;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getContentEncoding() {
+            return contentEncoding;
+        }
+
+    }
+
+    public static class Response {
+
+        private final int code;
+        private final long retryAfter;
+
+        public Response(int code, long retryAfter) {
+            this.code = code;
+            this.retryAfter = retryAfter;
+        }
+
+        public int getCode() {
+            return code;
+        }
+
+        public long getRetryAfter() {
+            return retryAfter;
+        }
+
+        public boolean isSuccessful() {
+            return code >= 200 && code < 300;
+        }
+
     }
 
-    private static class RequestAsyncTask extends AsyncTask<String, Void, Boolean> {
+    private static final Executor executor = Executors.newCachedThreadPool();
+
+    private static class RequestTask implements Runnable {
 
-        private RequestHandler handler;
+        private final Handler resultHandler = new Handler();
+        private final Request request;
+        private final RequestHandler handler;
 
-        public RequestAsyncTask(RequestHandler handler) {
+        public RequestTask(Request request, RequestHandler handler) {
+            this.request = request;
             this.handler = handler;
         }
 
         @Override
-        protected Boolean doInBackground(String... request) {
-            return sendRequest(request[0]);
+        public void run() {
+            final Response result = executeRequest(request);
+            resultHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    handler.onComplete(result != null && result.isSuccessful(), result);
+                }
+            });
         }
+    }
 
-        @Override
-        protected void onPostExecute(Boolean result) {
-            handler.onComplete(result);
+    public static long parseRetryAfter(String value) {
+        if (value != null) {
+            try {
+                if (TextUtils.isDigitsOnly(value.trim())) {
+                    return Long.parseLong(value.trim()) * 1000;
+                }
+                SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+                return Math.max(0, format.parse(value).getTime() - System.currentTimeMillis());
+            } catch (NumberFormatException | ParseException e) {
+                Log.w(RequestManager.class.getSimpleName(), e);
+            }
         }
+        return 0;
+    }
+
+    private static Transport transport = Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP
+            ? new PooledTransport() : new UrlConnectionTransport();
+
+    public static Transport getTransport() {
+        return transport;
+    }
+
+    public static void setTransport(Transport transport) {
+        RequestManager.transport = transport;
     }
 
     public static boolean sendRequest(String request) {
-        InputStream inputStream = null;
+        return sendRequest(new Request(request));
+    }
+
+    public static boolean sendRequest(Request request) {
+        Response response = executeRequest(request);
+        return response != null && response.isSuccessful();
+    }
+
+    public static Response executeRequest(Request request) {
+        Statistics.increment(R.string.statistics_requests);
         try {
-            URL url = new URL(request);
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-            connection.setReadTimeout(TIMEOUT);
-            connection.setConnectTimeout(TIMEOUT);
-            connection.setRequestMethod("POST");
-            connection.connect();
-            inputStream = connection.getInputStream();
-            while (inputStream.read() != -1);
-            return true;
+            return transport.send(request);
         } catch (IOException error) {
-            return false;
-        } finally {
-            try {
-                if (inputStream != null) {
-                    inputStream.close();
-                }
-            } catch (IOException secondError) {
-                Log.w(RequestManager.class.getSimpleName(), secondError);
-            }
+            return null;
+        } catch (RuntimeException error) {
+            // Malformed URLs are rejected with unchecked exceptions
+            Log.w(RequestManager.class.getSimpleName(), error);
+            return new Response(CODE_INVALID, 0);
+        }
+    }
+
+    // Open a connection ahead of time, so an urgent request can reuse it
+    public static void warmUp(String url) {
+        try {
+            transport.warmUp(url);
+        } catch (IOException | RuntimeException error) {
+            Log.w(RequestManager.class.getSimpleName(), error);
         }
     }
 
     public static void sendRequestAsync(String request, RequestHandler handler) {
-        RequestAsyncTask task = new RequestAsyncTask(handler);
-        task.execute(request);
+        sendRequestAsync(new Request(request), handler);
+    }
+
+    public static void sendRequestAsync(Request request, RequestHandler handler) {
+        executor.execute(new RequestTask(request, handler));
     }
 
 }
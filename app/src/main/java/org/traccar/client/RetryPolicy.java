@@ -0,0 +1,121 @@
+/*
+ * Copyright 2018 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.client;
+
+import java.util.Random;
+
+public class RetryPolicy {
+
+    public static final int HTTP_TOO_MANY_REQUESTS = 429;
+    public static final int HTTP_SERVICE_UNAVAILABLE = 503;
+
+    public interface Clock {
+        long currentTime();
+    }
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final long baseDelay;
+    private final long maxDelay;
+    private final int failureThreshold;
+    private final long openDuration;
+
+    private final Random random;
+    private final Clock clock;
+
+    private State state = State.CLOSED;
+    private int failures;
+    private long openUntil;
+    private boolean probing;
+
+    public RetryPolicy(
+            long baseDelay, long maxDelay, int failureThreshold, long openDuration, Random random, Clock clock) {
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+        this.random = random;
+        this.clock = clock;
+    }
+
+    public synchronized State getState() {
+        if (state == State.OPEN && clock.currentTime() >= openUntil) {
+            state = State.HALF_OPEN;
+            probing = false;
+        }
+        return state;
+    }
+
+    public synchronized long getDelay() {
+        switch (getState()) {
+            case OPEN:
+                return openUntil - clock.currentTime();
+            case HALF_OPEN:
+                return probing ? baseDelay : 0;
+            default:
+                return 0;
+        }
+    }
+
+    public synchronized boolean tryAcquire() {
+        switch (getState()) {
+            case OPEN:
+                return false;
+            case HALF_OPEN:
+                if (probing) {
+                    return false;
+                }
+                probing = true;
+                return true;
+            default:
+                return true;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        state = State.CLOSED;
+        failures = 0;
+        probing = false;
+    }
+
+    public synchronized long onFailure(int code, long retryAfter) {
+        return onFailure(failures + 1, code, retryAfter);
+    }
+
+    // Backoff follows the attempts of a single request, while the shared
+    // failure count only drives the circuit breaker
+    public synchronized long onFailure(int attempts, int code, long retryAfter) {
+        failures += 1;
+
+        long ceiling = baseDelay << Math.min(Math.max(attempts, 1) - 1, 30);
+        long delay = (long) (random.nextDouble() * Math.min(maxDelay, ceiling));
+        if (code == HTTP_TOO_MANY_REQUESTS || code == HTTP_SERVICE_UNAVAILABLE) {
+            delay = Math.max(delay, retryAfter);
+        }
+
+        if (getState() == State.HALF_OPEN || failures >= failureThreshold) {
+            state = State.OPEN;
+            probing = false;
+            delay = Math.max(delay, openDuration);
+            openUntil = clock.currentTime() + delay;
+        }
+
+        return delay;
+    }
+
+}
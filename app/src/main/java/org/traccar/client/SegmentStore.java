@@ -0,0 +1,622 @@
+/*
+ * Copyright 2018 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.client;
+
+import android.content.Context;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+public class SegmentStore implements PositionStore {
+
+    private static final String TAG = SegmentStore.class.getSimpleName();
+
+    public static final String DIRECTORY = "positions";
+
+    private static final String CURSOR_FILE = "cursor";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    //
+    // Segment file layout:
+    //
+    // header (256 bytes): magic, version, record size, record count,
+    // first id, device identifier length and UTF-8 device identifier
+    //
+    // record (64 bytes): state, flags, time, latitude, longitude, altitude,
+    // speed, course, accuracy, battery, raw latitude, raw longitude and
+    // network type, followed by reserved bytes
+    //
+    // Record ids are implicit, the first id of the segment plus the record
+    // index. All records of a segment belong to the same device. The state
+    // is written last, so a record is only visible once fully written.
+    //
+
+    private static final int MAGIC = 0x54434c53;
+    private static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 256;
+    static final int RECORD_SIZE = 64;
+    static final int SEGMENT_RECORDS = 4096;
+    static final int SEGMENT_SIZE = HEADER_SIZE + SEGMENT_RECORDS * RECORD_SIZE;
+
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_VERSION = 4;
+    private static final int HEADER_RECORD_SIZE = 8;
+    private static final int HEADER_RECORD_COUNT = 12;
+    private static final int HEADER_FIRST_ID = 16;
+    private static final int HEADER_DEVICE_LENGTH = 24;
+    private static final int HEADER_DEVICE = 28;
+
+    private static final int RECORD_STATE = 0;
+    private static final int RECORD_FLAGS = 4;
+    private static final int RECORD_TIME = 8;
+    private static final int RECORD_LATITUDE = 16;
+    private static final int RECORD_LONGITUDE = 20;
+    private static final int RECORD_ALTITUDE = 24;
+    private static final int RECORD_SPEED = 28;
+    private static final int RECORD_COURSE = 32;
+    private static final int RECORD_ACCURACY = 36;
+    private static final int RECORD_BATTERY = 40;
+    private static final int RECORD_RAW_LATITUDE = 44;
+    private static final int RECORD_RAW_LONGITUDE = 48;
+    private static final int RECORD_NETWORK = 52;
+
+    private static final int STATE_EMPTY = 0;
+    private static final int STATE_VALID = 1;
+    private static final int STATE_DELETED = 2;
+
+    private static final int FLAG_MOCK = 1;
+    private static final int FLAG_RAW = 2;
+    private static final int FLAG_CHARGING = 4;
+    private static final int FLAG_CACHED = 8;
+
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    private static final int ALLOCATE_CHUNK = 64 * 1024;
+
+    private static class Segment {
+
+        private final File file;
+        private final MappedByteBuffer buffer;
+        private final long firstId;
+        private String deviceId;
+        private int count;
+        private int live;
+
+        Segment(File file, MappedByteBuffer buffer, long firstId, String deviceId) {
+            this.file = file;
+            this.buffer = buffer;
+            this.firstId = firstId;
+            this.deviceId = deviceId;
+        }
+
+        boolean contains(long id) {
+            return id >= firstId && id < firstId + count;
+        }
+
+        boolean isFull() {
+            return count == SEGMENT_RECORDS;
+        }
+
+        int offset(long id) {
+            return HEADER_SIZE + (int) (id - firstId) * RECORD_SIZE;
+        }
+
+        int getState(long id) {
+            return buffer.getInt(offset(id) + RECORD_STATE);
+        }
+
+    }
+
+    private final Context context;
+    private final File directory;
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+
+    private MappedByteBuffer cursorBuffer;
+    private long cursor;
+    private long nextId;
+    private long rows;
+    private long readId;
+
+    private long maxRows;
+    private long maxBytes;
+    private EvictionPolicy evictionPolicy = new EvictionPolicy.Oldest();
+
+    private static SegmentStore instance;
+
+    // Record ids, cursor and row count are kept in memory, so only a single
+    // instance per process may write to the directory
+    public static synchronized SegmentStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new SegmentStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    public SegmentStore(Context context) {
+        this.context = context;
+        directory = new File(context.getFilesDir(), DIRECTORY);
+        try {
+            open();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static boolean exists(Context context) {
+        String[] files = new File(context.getFilesDir(), DIRECTORY).list();
+        if (files != null) {
+            for (String file : files) {
+                if (file.endsWith(SEGMENT_SUFFIX)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static MappedByteBuffer map(File file, int size, boolean truncate) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            if (truncate) {
+                randomAccessFile.setLength(0);
+            }
+            FileChannel channel = randomAccessFile.getChannel();
+            allocate(channel, size);
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    // Mapping a sparse file defers block allocation to the first store into
+    // each page, which raises SIGBUS on a full disk. Writing zeros first
+    // reports it as an IOException that insertPositions can handle.
+    private static void allocate(FileChannel channel, int size) throws IOException {
+        ByteBuffer zeros = ByteBuffer.allocate(Math.min(size, ALLOCATE_CHUNK));
+        long position = channel.size();
+        while (position < size) {
+            zeros.clear();
+            zeros.limit((int) Math.min(zeros.capacity(), size - position));
+            position += channel.write(zeros, position);
+        }
+    }
+
+    private void open() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Failed to create " + directory);
+        }
+
+        cursorBuffer = map(new File(directory, CURSOR_FILE), 8, false);
+        cursor = Math.max(1, cursorBuffer.getLong(0));
+        nextId = cursor;
+
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().endsWith(SEGMENT_SUFFIX)) {
+                    Segment segment = openSegment(file);
+                    if (segment != null) {
+                        segments.put(segment.firstId, segment);
+                        nextId = Math.max(nextId, segment.firstId + segment.count);
+                        rows += segment.live;
+                    } else if (!file.delete()) {
+                        Log.w(TAG, "failed to delete " + file);
+                    }
+                }
+            }
+        }
+
+        compact();
+    }
+
+    private Segment openSegment(File file) throws IOException {
+        if (file.length() != SEGMENT_SIZE) {
+            Log.w(TAG, "invalid segment " + file);
+            return null;
+        }
+        MappedByteBuffer buffer = map(file, SEGMENT_SIZE, false);
+        if (buffer.getInt(HEADER_MAGIC) != MAGIC
+                || buffer.getInt(HEADER_VERSION) != VERSION
+                || buffer.getInt(HEADER_RECORD_SIZE) != RECORD_SIZE
+                || buffer.getInt(HEADER_RECORD_COUNT) != SEGMENT_RECORDS) {
+            Log.w(TAG, "invalid segment " + file);
+            return null;
+        }
+
+        String deviceId = null;
+        int deviceLength = buffer.getInt(HEADER_DEVICE_LENGTH);
+        if (deviceLength >= 0) {
+            byte[] data = new byte[deviceLength];
+            buffer.position(HEADER_DEVICE);
+            buffer.get(data);
+            deviceId = new String(data, CHARSET);
+        }
+
+        Segment segment = new Segment(file, buffer, buffer.getLong(HEADER_FIRST_ID), deviceId);
+        while (segment.count < SEGMENT_RECORDS) {
+            int state = buffer.getInt(HEADER_SIZE + segment.count * RECORD_SIZE + RECORD_STATE);
+            if (state == STATE_EMPTY) {
+                break;
+            }
+            if (state == STATE_VALID && segment.firstId + segment.count >= cursor) {
+                segment.live += 1;
+            }
+            segment.count += 1;
+        }
+        return segment;
+    }
+
+    public static boolean isValidDevice(String deviceId) {
+        return deviceId == null || deviceId.getBytes(CHARSET).length <= HEADER_SIZE - HEADER_DEVICE;
+    }
+
+    // Invalid identifier is not a storage failure, so it must not trigger eviction
+    private static byte[] encodeDevice(String deviceId) {
+        if (!isValidDevice(deviceId)) {
+            throw new IllegalArgumentException("Device identifier too long");
+        }
+        return deviceId != null ? deviceId.getBytes(CHARSET) : null;
+    }
+
+    private static void writeDevice(MappedByteBuffer buffer, byte[] data) {
+        if (data != null) {
+            buffer.putInt(HEADER_DEVICE_LENGTH, data.length);
+            buffer.position(HEADER_DEVICE);
+            buffer.put(data);
+        } else {
+            buffer.putInt(HEADER_DEVICE_LENGTH, -1);
+        }
+    }
+
+    private Segment createSegment(long firstId, String deviceId) throws IOException {
+        byte[] data = encodeDevice(deviceId);
+
+        File file = new File(directory, String.format(Locale.US, "%020d%s", firstId, SEGMENT_SUFFIX));
+        MappedByteBuffer buffer = map(file, SEGMENT_SIZE, true);
+        buffer.putInt(HEADER_VERSION, VERSION);
+        buffer.putInt(HEADER_RECORD_SIZE, RECORD_SIZE);
+        buffer.putInt(HEADER_RECORD_COUNT, SEGMENT_RECORDS);
+        buffer.putLong(HEADER_FIRST_ID, firstId);
+        writeDevice(buffer, data);
+        buffer.putInt(HEADER_MAGIC, MAGIC);
+
+        Segment previous = segments.isEmpty() ? null : segments.lastEntry().getValue();
+        if (previous != null) {
+            previous.buffer.force();
+        }
+        return new Segment(file, buffer, firstId, deviceId);
+    }
+
+    private void append(Position position) throws IOException {
+        Segment segment = segments.isEmpty() ? null : segments.lastEntry().getValue();
+        if (segment == null || segment.isFull() || !TextUtils.equals(segment.deviceId, position.getDeviceId())) {
+            segment = createSegment(nextId, position.getDeviceId());
+            segments.put(segment.firstId, segment);
+        }
+
+        MappedByteBuffer buffer = segment.buffer;
+        int offset = segment.offset(nextId);
+        int flags = position.getMock() ? FLAG_MOCK : 0;
+        if (position.getRawLatitude() != null && position.getRawLongitude() != null) {
+            flags |= FLAG_RAW;
+            buffer.putInt(offset + RECORD_RAW_LATITUDE,
+                    (int) Math.round(position.getRawLatitude() * COORDINATE_SCALE));
+            buffer.putInt(offset + RECORD_RAW_LONGITUDE,
+                    (int) Math.round(position.getRawLongitude() * COORDINATE_SCALE));
+        }
+        if (position.getCharging()) {
+            flags |= FLAG_CHARGING;
+        }
+        if (position.getCached()) {
+            flags |= FLAG_CACHED;
+        }
+        buffer.putInt(offset + RECORD_FLAGS, flags);
+        buffer.putLong(offset + RECORD_TIME, position.getTime().getTime());
+        buffer.putInt(offset + RECORD_LATITUDE, (int) Math.round(position.getLatitude() * COORDINATE_SCALE));
+        buffer.putInt(offset + RECORD_LONGITUDE, (int) Math.round(position.getLongitude() * COORDINATE_SCALE));
+        buffer.putInt(offset + RECORD_ALTITUDE, (int) Math.round(position.getAltitude() * ALTITUDE_SCALE));
+        buffer.putInt(offset + RECORD_SPEED, (int) Math.round(position.getSpeed() * SPEED_SCALE));
+        buffer.putInt(offset + RECORD_COURSE, (int) Math.round(position.getCourse() * COURSE_SCALE));
+        buffer.putInt(offset + RECORD_ACCURACY, (int) Math.round(position.getAccuracy() * ACCURACY_SCALE));
+        buffer.putInt(offset + RECORD_BATTERY, (int) Math.round(position.getBattery() * BATTERY_SCALE));
+        buffer.putInt(offset + RECORD_NETWORK, position.getNetwork());
+        buffer.putInt(offset + RECORD_STATE, STATE_VALID);
+
+        segment.count += 1;
+        segment.live += 1;
+        rows += 1;
+        nextId += 1;
+    }
+
+    private Position readPosition(Segment segment, long id) {
+        MappedByteBuffer buffer = segment.buffer;
+        int offset = segment.offset(id);
+        Position position = new Position();
+
+        position.setId(id);
+        position.setDeviceId(segment.deviceId);
+        position.setTime(new Date(buffer.getLong(offset + RECORD_TIME)));
+        position.setLatitude(buffer.getInt(offset + RECORD_LATITUDE) / COORDINATE_SCALE);
+        position.setLongitude(buffer.getInt(offset + RECORD_LONGITUDE) / COORDINATE_SCALE);
+        position.setAltitude(buffer.getInt(offset + RECORD_ALTITUDE) / ALTITUDE_SCALE);
+        position.setSpeed(buffer.getInt(offset + RECORD_SPEED) / SPEED_SCALE);
+        position.setCourse(buffer.getInt(offset + RECORD_COURSE) / COURSE_SCALE);
+        position.setAccuracy(buffer.getInt(offset + RECORD_ACCURACY) / ACCURACY_SCALE);
+        position.setBattery(buffer.getInt(offset + RECORD_BATTERY) / BATTERY_SCALE);
+        int flags = buffer.getInt(offset + RECORD_FLAGS);
+        position.setMock((flags & FLAG_MOCK) != 0);
+        position.setCharging((flags & FLAG_CHARGING) != 0);
+        position.setCached((flags & FLAG_CACHED) != 0);
+        position.setNetwork(buffer.getInt(offset + RECORD_NETWORK));
+        if ((flags & FLAG_RAW) != 0) {
+            position.setRawLatitude(buffer.getInt(offset + RECORD_RAW_LATITUDE) / COORDINATE_SCALE);
+            position.setRawLongitude(buffer.getInt(offset + RECORD_RAW_LONGITUDE) / COORDINATE_SCALE);
+        }
+
+        return position;
+    }
+
+    private void remove(long id) {
+        Map.Entry<Long, Segment> entry = segments.floorEntry(id);
+        if (entry != null && id >= cursor) {
+            Segment segment = entry.getValue();
+            if (segment.contains(id) && segment.getState(id) == STATE_VALID) {
+                segment.buffer.putInt(segment.offset(id) + RECORD_STATE, STATE_DELETED);
+                segment.live -= 1;
+                rows -= 1;
+            }
+        }
+    }
+
+    //
+    // Fully acknowledged segments are deleted as a whole. The cursor points
+    // to the oldest unacknowledged record, so reopening the store does not
+    // need to look at anything below it.
+    //
+
+    private void compact() {
+        long first = -1;
+        Segment last = segments.isEmpty() ? null : segments.lastEntry().getValue();
+        Iterator<Segment> iterator = segments.values().iterator();
+        while (iterator.hasNext()) {
+            Segment segment = iterator.next();
+            if (segment.live > 0) {
+                if (first < 0) {
+                    first = Math.max(cursor, segment.firstId);
+                    while (segment.getState(first) != STATE_VALID) {
+                        first += 1;
+                    }
+                }
+            } else if (segment != last || segment.isFull()) {
+                if (!segment.file.delete()) {
+                    Log.w(TAG, "failed to delete " + segment.file);
+                }
+                iterator.remove();
+            }
+        }
+        if (first < 0) {
+            first = nextId;
+        }
+        if (first != cursor) {
+            cursor = first;
+            cursorBuffer.putLong(0, cursor);
+        }
+    }
+
+    private long[] selectIds(long afterId, int limit) {
+        long[] ids = new long[(int) Math.min(limit, rows)];
+        int size = 0;
+        long start = Math.max(afterId + 1, cursor);
+        for (Segment segment : segments.values()) {
+            for (long id = Math.max(start, segment.firstId); id < segment.firstId + segment.count; id++) {
+                if (size == ids.length) {
+                    return ids;
+                }
+                if (segment.getState(id) == STATE_VALID) {
+                    ids[size++] = id;
+                }
+            }
+        }
+        return Arrays.copyOf(ids, size);
+    }
+
+    private void evict(int count, EvictionPolicy policy) {
+        long[] ids = policy.select(selectIds(policy.skipsRead() ? readId : 0, policy.getCandidates(count)), count);
+        if (ids.length > 0) {
+            for (long id : ids) {
+                remove(id);
+            }
+            compact();
+            Log.i(TAG, "evicted " + ids.length + " positions");
+            Statistics.add(R.string.statistics_evicted, ids.length);
+            StatusActivity.addMessage(context.getString(R.string.status_evicted));
+        }
+        if (ids.length < count && policy.skipsRead()) {
+            evict(count - ids.length, new EvictionPolicy.Oldest());
+        }
+    }
+
+    // Space is only released by whole segments, so the byte quota evicts
+    // the live records of the oldest segments regardless of the policy
+    private void enforceQuota() {
+        if (maxRows > 0 && rows > maxRows) {
+            long target = maxRows * QUOTA_LOW_WATER / 100;
+            evict((int) Math.min(Integer.MAX_VALUE, rows - target), evictionPolicy);
+        }
+        long bytes = getBytes();
+        if (maxBytes > 0 && bytes > maxBytes && rows > 0) {
+            long excess = (bytes - maxBytes * QUOTA_LOW_WATER / 100 + SEGMENT_SIZE - 1) / SEGMENT_SIZE;
+            long count = 0;
+            for (Segment segment : segments.values()) {
+                if (excess-- <= 0) {
+                    break;
+                }
+                count += segment.live;
+            }
+            evict((int) Math.min(Integer.MAX_VALUE, count), new EvictionPolicy.Oldest());
+        }
+    }
+
+    @Override
+    public synchronized void setQuota(long maxRows, long maxBytes, EvictionPolicy evictionPolicy) {
+        this.maxRows = maxRows;
+        this.maxBytes = maxBytes;
+        this.evictionPolicy = evictionPolicy;
+    }
+
+    @Override
+    public synchronized long getRows() {
+        return rows;
+    }
+
+    @Override
+    public synchronized long getBytes() {
+        return (long) segments.size() * SEGMENT_SIZE;
+    }
+
+    @Override
+    public synchronized void insertPositions(List<Position> positions) {
+        boolean evicted = false;
+        int index = 0;
+        while (index < positions.size()) {
+            try {
+                append(positions.get(index));
+                index += 1;
+            } catch (IOException e) {
+                if (evicted) {
+                    throw new IllegalStateException(e);
+                }
+                Log.w(TAG, e);
+                evict((int) Math.max(positions.size() - index, rows / 10), new EvictionPolicy.Oldest());
+                evicted = true;
+            }
+        }
+        enforceQuota();
+    }
+
+    @Override
+    public void insertPositionsAsync(final List<Position> positions, StoreHandler<Void> handler) {
+        new StoreTask<Void>(handler) {
+            @Override
+            protected Void executeMethod() {
+                insertPositions(positions);
+                return null;
+            }
+        }.execute();
+    }
+
+    private List<Position> markRead(List<Position> positions) {
+        if (!positions.isEmpty()) {
+            readId = Math.max(readId, positions.get(positions.size() - 1).getId());
+        }
+        return positions;
+    }
+
+    @Override
+    public synchronized List<Position> selectPositions(long afterId, int limit) {
+        List<Position> positions = new ArrayList<>();
+        long start = Math.max(afterId + 1, cursor);
+        Long key = segments.floorKey(start);
+        NavigableMap<Long, Segment> view = key != null ? segments.tailMap(key, true) : segments;
+        for (Segment segment : view.values()) {
+            for (long id = Math.max(start, segment.firstId); id < segment.firstId + segment.count; id++) {
+                if (positions.size() == limit) {
+                    return markRead(positions);
+                }
+                if (segment.getState(id) == STATE_VALID) {
+                    positions.add(readPosition(segment, id));
+                }
+            }
+        }
+        return markRead(positions);
+    }
+
+    @Override
+    public void selectPositionsAsync(final long afterId, final int limit, StoreHandler<List<Position>> handler) {
+        new StoreTask<List<Position>>(handler) {
+            @Override
+            protected List<Position> executeMethod() {
+                return selectPositions(afterId, limit);
+            }
+        }.execute();
+    }
+
+    @Override
+    public synchronized void deletePositions(long[] ids) {
+        for (long id : ids) {
+            remove(id);
+        }
+        compact();
+    }
+
+    @Override
+    public void deletePositionsAsync(final long[] ids, StoreHandler<Void> handler) {
+        new StoreTask<Void>(handler) {
+            @Override
+            protected Void executeMethod() {
+                deletePositions(ids);
+                return null;
+            }
+        }.execute();
+    }
+
+    @Override
+    public synchronized void changeDevice(String deviceId, boolean retag) {
+        byte[] data = encodeDevice(deviceId);
+        for (Segment segment : segments.values()) {
+            if (!TextUtils.equals(segment.deviceId, deviceId)) {
+                if (retag) {
+                    writeDevice(segment.buffer, data);
+                    segment.deviceId = deviceId;
+                } else {
+                    for (long id = Math.max(cursor, segment.firstId); id < segment.firstId + segment.count; id++) {
+                        remove(id);
+                    }
+                }
+            }
+        }
+        compact();
+    }
+
+    @Override
+    public void changeDeviceAsync(final String deviceId, final boolean retag, StoreHandler<Void> handler) {
+        new StoreTask<Void>(handler) {
+            @Override
+            protected Void executeMethod() {
+                changeDevice(deviceId, retag);
+                return null;
+            }
+        }.execute();
+    }
+
+}
@@ -19,11 +19,11 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
-import android.location.Criteria;
 import android.location.Location;
 import android.location.LocationListener;
 import android.location.LocationManager;
 import android.os.Bundle;
+import android.os.Handler;
 import android.os.Looper;
 import android.preference.PreferenceManager;
 import android.support.annotation.DrawableRes;
@@ -46,6 +46,9 @@ public class ShortcutActivity extends AppCompatActivity {
     public static final String ACTION_SOS = "sos";
 
     private static final String ALARM_SOS = "sos";
+    private static final long ALARM_TIMEOUT = 10 * 1000;
+
+    private boolean alarmSent;
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
@@ -103,63 +106,73 @@ public class ShortcutActivity extends AppCompatActivity {
         setResult(RESULT_OK, ShortcutManagerCompat.createShortcutResultIntent(this, shortcut));
     }
 
+    // Alarm is sent right away with the freshest cached location of any age,
+    // followed by a regular position from a high accuracy fix. Without any
+    // cached location the alarm goes with the first fix, or with whatever
+    // other providers have cached by ALARM_TIMEOUT.
     @SuppressWarnings("MissingPermission")
     private void sendAlarm() {
-        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(this);
         LocationManager locationManager = (LocationManager) getSystemService(Context.LOCATION_SERVICE);
 
-        Criteria criteria = PositionProvider.getCriteria(
-                preferences.getString(MainFragment.KEY_ACCURACY, "medium"));
+        Location lastLocation = PositionProvider.getLastKnownLocation(this, Long.MAX_VALUE, Float.MAX_VALUE);
+        if (lastLocation != null) {
+            sendAlarmLocation(lastLocation, true, ALARM_SOS);
+            alarmSent = true;
+        } else {
+            AlarmSender.getInstance(this).warmUp(PreferenceManager.getDefaultSharedPreferences(this)
+                    .getString(MainFragment.KEY_URL, null));
+            new Handler().postDelayed(new Runnable() {
+                @Override
+                public void run() {
+                    if (!alarmSent) {
+                        Location location = PositionProvider.getLastKnownLocation(
+                                ShortcutActivity.this, Long.MAX_VALUE, Float.MAX_VALUE);
+                        if (location != null) {
+                            sendAlarmLocation(location, true, ALARM_SOS);
+                            alarmSent = true;
+                        }
+                    }
+                }
+            }, ALARM_TIMEOUT);
+        }
 
         try {
-            Location location = locationManager.getLastKnownLocation(locationManager.getBestProvider(criteria, true));
-            if (location != null) {
-                sendAlarmLocation(location);
-            } else {
-                locationManager.requestSingleUpdate(criteria, new LocationListener() {
-                    @Override
-                    public void onLocationChanged(Location location) {
-                        sendAlarmLocation(location);
-                    }
+            locationManager.requestSingleUpdate(AndroidPositionProvider.getCriteria("high"), new LocationListener() {
+                @Override
+                public void onLocationChanged(Location location) {
+                    sendAlarmLocation(location, false, alarmSent ? null : ALARM_SOS);
+                    alarmSent = true;
+                }
 
-                    @Override
-                    public void onStatusChanged(String provider, int status, Bundle extras) {
-                    }
+                @Override
+                public void onStatusChanged(String provider, int status, Bundle extras) {
+                }
 
-                    @Override
-                    public void onProviderEnabled(String provider) {
-                    }
+                @Override
+                public void onProviderEnabled(String provider) {
+                }
 
-                    @Override
-                    public void onProviderDisabled(String provider) {
-                    }
-                }, Looper.myLooper());
-            }
+                @Override
+                public void onProviderDisabled(String provider) {
+                }
+            }, Looper.myLooper());
         } catch (RuntimeException e) {
             Toast.makeText(this, e.getMessage(), Toast.LENGTH_LONG).show();
         }
     }
 
-    private void sendAlarmLocation(Location location) {
+    private void sendAlarmLocation(Location location, boolean cached, String alarm) {
         SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(this);
 
         Position position = new Position(
                 preferences.getString(MainFragment.KEY_DEVICE, null),
-                location, PositionProvider.getBatteryLevel(this));
+                location, DeviceState.getInstance(this));
+        position.setCached(cached);
 
         String request = ProtocolFormatter.formatRequest(
-                preferences.getString(MainFragment.KEY_URL, null), position, ALARM_SOS);
-
-        RequestManager.sendRequestAsync(request, new RequestManager.RequestHandler() {
-            @Override
-            public void onComplete(boolean success) {
-                if (success) {
-                    Toast.makeText(ShortcutActivity.this, R.string.status_send_success, Toast.LENGTH_SHORT).show();
-                } else {
-                    Toast.makeText(ShortcutActivity.this, R.string.status_send_fail, Toast.LENGTH_SHORT).show();
-                }
-            }
-        });
+                preferences.getString(MainFragment.KEY_URL, null), position, alarm);
+
+        AlarmSender.getInstance(this).send(request);
     }
 
     private boolean executeAction(Intent intent) {
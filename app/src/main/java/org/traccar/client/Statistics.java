@@ -0,0 +1,53 @@
+/*
+ * Copyright 2018 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.client;
+
+import android.content.Context;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public final class Statistics {
+
+    private static final Map<Integer, Object> values = new LinkedHashMap<>();
+
+    private Statistics() {
+    }
+
+    public static synchronized void add(int key, long value) {
+        Object current = values.get(key);
+        values.put(key, current instanceof Long ? (Long) current + value : value);
+    }
+
+    public static void increment(int key) {
+        add(key, 1);
+    }
+
+    public static synchronized void set(int key, String value) {
+        values.put(key, value);
+    }
+
+    public static synchronized List<String> format(Context context) {
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<Integer, Object> entry : values.entrySet()) {
+            lines.add(context.getString(entry.getKey()) + ": " + entry.getValue());
+        }
+        return lines;
+    }
+
+}
@@ -22,7 +22,11 @@ import java.util.LinkedList;
 import java.util.Set;
 
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.app.AlertDialog;
 import android.support.v7.app.AppCompatActivity;
+import android.text.TextUtils;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
@@ -35,6 +39,7 @@ public class StatusActivity extends AppCompatActivity {
 
     private static final LinkedList<String> messages = new LinkedList<>();
     private static final Set<ArrayAdapter<String>> adapters = new HashSet<>();
+    private static final Handler handler = new Handler(Looper.getMainLooper());
 
     private static void notifyAdapters() {
         for (ArrayAdapter<String> adapter : adapters) {
@@ -44,7 +49,20 @@ public class StatusActivity extends AppCompatActivity {
 
     public static void addMessage(String message) {
         DateFormat format = DateFormat.getTimeInstance(DateFormat.MEDIUM);
-        message = format.format(new Date()) + " - " + message;
+        final String line = format.format(new Date()) + " - " + message;
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            appendMessage(line);
+        } else {
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    appendMessage(line);
+                }
+            });
+        }
+    }
+
+    private static void appendMessage(String message) {
         messages.add(message);
         while (messages.size() > LIMIT) {
             messages.removeFirst();
@@ -87,6 +105,13 @@ public class StatusActivity extends AppCompatActivity {
         if (item.getItemId() == R.id.clear) {
             clearMessages();
             return true;
+        } else if (item.getItemId() == R.id.statistics) {
+            new AlertDialog.Builder(this)
+                    .setTitle(R.string.menu_statistics)
+                    .setMessage(TextUtils.join("\n", Statistics.format(this)))
+                    .setPositiveButton(android.R.string.ok, null)
+                    .show();
+            return true;
         }
         return super.onOptionsItemSelected(item);
     }
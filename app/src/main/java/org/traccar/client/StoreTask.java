@@ -0,0 +1,60 @@
+/*
+ * Copyright 2018 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.client;
+
+import android.os.Handler;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+abstract class StoreTask<T> implements Runnable {
+
+    private static final Executor executor = Executors.newSingleThreadExecutor();
+
+    private final Handler resultHandler = new Handler();
+    private final PositionStore.StoreHandler<T> handler;
+
+    StoreTask(PositionStore.StoreHandler<T> handler) {
+        this.handler = handler;
+    }
+
+    protected abstract T executeMethod();
+
+    @Override
+    public void run() {
+        T result = null;
+        boolean success;
+        try {
+            result = executeMethod();
+            success = true;
+        } catch (RuntimeException error) {
+            success = false;
+        }
+        final T finalResult = result;
+        final boolean finalSuccess = success;
+        resultHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                handler.onComplete(finalSuccess, finalResult);
+            }
+        });
+    }
+
+    public void execute() {
+        executor.execute(this);
+    }
+
+}
@@ -18,29 +18,80 @@ package org.traccar.client;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
 import android.os.PowerManager;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.util.Log;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
 public class TrackingController implements PositionProvider.PositionListener, NetworkManager.NetworkHandler {
 
+    public static final String STORE_DATABASE = "database";
+    public static final String STORE_SEGMENT = "segment";
+
+    public static final String DEVICE_CHANGE_DISCARD = "discard";
+    public static final String DEVICE_CHANGE_RETAG = "retag";
+    public static final String DEVICE_CHANGE_KEEP = "keep";
+
     private static final String TAG = TrackingController.class.getSimpleName();
     private static final int RETRY_DELAY = 30 * 1000;
+    private static final int RETRY_BASE_DELAY = 1000;
+    private static final int RETRY_MAX_DELAY = 15 * 60 * 1000;
+    private static final int RETRY_FAILURE_THRESHOLD = 5;
+    private static final int RETRY_OPEN_DURATION = 60 * 1000;
     private static final int WAKE_LOCK_TIMEOUT = 120 * 1000;
+    private static final int HTTP_UNSUPPORTED_MEDIA_TYPE = 415;
+    private static final int MOVE_BATCH_SIZE = 100;
+
+    private enum State {
+        STOPPED, OFFLINE, IDLE, DRAINING, BACKOFF
+    }
 
-    private boolean isOnline;
-    private boolean isWaiting;
+    private State state = State.STOPPED;
+    private boolean isReading;
+
+    private int inFlight;
+    private int liveInFlight;
+    private long bulkResumeTime;
+    private long lastReadId;
+    private List<Runnable> pendingRetries = new ArrayList<>();
+    private List<Position> writeBuffer = new ArrayList<>();
+    private List<Position> livePositions = new ArrayList<>();
+    private int pendingWrites;
 
     private Context context;
+    private HandlerThread thread;
     private Handler handler;
     private SharedPreferences preferences;
 
     private String url;
+    private int batchSize;
+    private int batchBytes;
+    private int window;
+    private boolean liveLane;
+    private int bulkShare;
+    private String format;
+    private String encoding;
+    private int bufferSize;
+    private long bufferTime;
+    private boolean keepForeign;
 
     private PositionProvider positionProvider;
-    private DatabaseHelper databaseHelper;
+    private PositionStore positionStore;
     private NetworkManager networkManager;
 
+    private RetryPolicy retryPolicy;
+    private RetryPolicy.State retryState = RetryPolicy.State.CLOSED;
+
     private PowerManager.WakeLock wakeLock;
 
     private void lock() {
@@ -55,39 +106,145 @@ public class TrackingController implements PositionProvider.PositionListener, Ne
 
     public TrackingController(Context context) {
         this.context = context;
-        handler = new Handler();
+        thread = new HandlerThread(TAG);
+        thread.start();
+        handler = new Handler(thread.getLooper());
         preferences = PreferenceManager.getDefaultSharedPreferences(context);
-        positionProvider = new PositionProvider(context, this);
-        databaseHelper = new DatabaseHelper(context);
+        positionProvider = ((MainApplication) context.getApplicationContext()).createPositionProvider(context, this);
         networkManager = new NetworkManager(context, this);
-        isOnline = networkManager.isOnline();
+
+        retryPolicy = new RetryPolicy(
+                RETRY_BASE_DELAY, RETRY_MAX_DELAY, RETRY_FAILURE_THRESHOLD, RETRY_OPEN_DURATION,
+                new Random(), new RetryPolicy.Clock() {
+            @Override
+            public long currentTime() {
+                return SystemClock.elapsedRealtime();
+            }
+        });
+        Statistics.set(R.string.statistics_circuit, retryState.toString());
 
         url = preferences.getString(MainFragment.KEY_URL, context.getString(R.string.settings_url_default_value));
+        batchSize = Math.max(1, Integer.parseInt(preferences.getString(MainFragment.KEY_BATCH_SIZE, "1")));
+        batchBytes = Integer.parseInt(preferences.getString(MainFragment.KEY_BATCH_BYTES, "65536"));
+        window = Math.max(1, Integer.parseInt(preferences.getString(MainFragment.KEY_WINDOW, "1")));
+        liveLane = preferences.getBoolean(MainFragment.KEY_LIVE_LANE, false);
+        bulkShare = Integer.parseInt(preferences.getString(MainFragment.KEY_BULK_SHARE, "50"));
+        bulkShare = Math.min(100, Math.max(1, bulkShare));
+        format = preferences.getString(MainFragment.KEY_FORMAT, ProtocolFormatter.FORMAT_TEXT);
+        encoding = preferences.getString(MainFragment.KEY_ENCODING, ProtocolFormatter.ENCODING_NONE);
+        if (preferences.getStringSet(MainFragment.KEY_ENCODING_REJECTED, new HashSet<String>()).contains(url)) {
+            encoding = ProtocolFormatter.ENCODING_NONE;
+        }
+        bufferSize = Math.max(1, Integer.parseInt(preferences.getString(MainFragment.KEY_BUFFER_SIZE, "1")));
+        bufferTime = Long.parseLong(preferences.getString(MainFragment.KEY_BUFFER_TIME, "0")) * 1000;
+        keepForeign = DEVICE_CHANGE_KEEP.equals(
+                preferences.getString(MainFragment.KEY_DEVICE_CHANGE, DEVICE_CHANGE_DISCARD));
 
         PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
         wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, getClass().getName());
     }
 
-    public void start() {
-        if (isOnline) {
-            read();
+    public static PositionStore getPositionStore(Context context) {
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+        if (STORE_SEGMENT.equals(preferences.getString(MainFragment.KEY_STORE, STORE_DATABASE))) {
+            return SegmentStore.getInstance(context);
+        } else {
+            return DatabaseHelper.getInstance(context);
         }
-        try {
-            positionProvider.startUpdates();
-        } catch (SecurityException e) {
-            Log.w(TAG, e);
-        }
-        networkManager.start();
+    }
+
+    public void start() {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                // Opening the store may run a schema migration, so keep it off the main thread
+                positionStore = getPositionStore(context);
+                positionStore.setQuota(
+                        Long.parseLong(preferences.getString(MainFragment.KEY_QUOTA_ROWS, "0")),
+                        Long.parseLong(preferences.getString(MainFragment.KEY_QUOTA_SIZE, "0")) * 1024,
+                        EvictionPolicy.create(preferences.getString(MainFragment.KEY_EVICTION, EvictionPolicy.OLDEST)));
+                AlarmSender.getInstance(context).flush();
+                moveBacklog();
+                setState(networkManager.isOnline() ? State.DRAINING : State.OFFLINE);
+                fill();
+                try {
+                    positionProvider.startUpdates();
+                } catch (SecurityException e) {
+                    Log.w(TAG, e);
+                }
+                networkManager.start();
+            }
+        });
     }
 
     public void stop() {
-        networkManager.stop();
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                networkManager.stop();
+                setState(State.STOPPED);
+                try {
+                    positionProvider.stopUpdates();
+                } catch (SecurityException e) {
+                    Log.w(TAG, e);
+                }
+                writeBuffer.addAll(livePositions);
+                livePositions.clear();
+                if (!writeBuffer.isEmpty()) {
+                    Collections.sort(writeBuffer, timeComparator);
+                    try {
+                        positionStore.insertPositions(writeBuffer);
+                    } catch (RuntimeException e) {
+                        Log.w(TAG, e);
+                    }
+                    writeBuffer.clear();
+                }
+                handler.removeCallbacksAndMessages(null);
+                pendingRetries.clear();
+                Looper.myLooper().quit();
+            }
+        });
+    }
+
+    public void flush() {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                flushWriteBuffer();
+            }
+        });
+    }
+
+    private void moveBacklog() {
         try {
-            positionProvider.stopUpdates();
-        } catch (SecurityException e) {
+            if (positionStore instanceof SegmentStore) {
+                moveBacklog(DatabaseHelper.getInstance(context), positionStore);
+            } else if (SegmentStore.exists(context)) {
+                moveBacklog(SegmentStore.getInstance(context), positionStore);
+            }
+        } catch (RuntimeException e) {
             Log.w(TAG, e);
         }
-        handler.removeCallbacksAndMessages(null);
+    }
+
+    private static void moveBacklog(PositionStore source, PositionStore target) {
+        List<Position> positions = source.selectPositions(0, MOVE_BATCH_SIZE);
+        while (!positions.isEmpty()) {
+            target.insertPositions(positions);
+            long[] ids = new long[positions.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = positions.get(i).getId();
+            }
+            source.deletePositions(ids);
+            positions = source.selectPositions(0, MOVE_BATCH_SIZE);
+        }
+    }
+
+    private void setState(State state) {
+        if (this.state != state) {
+            Log.d(TAG, "state " + this.state + " -> " + state);
+            this.state = state;
+        }
     }
 
     @Override
@@ -98,23 +255,80 @@ public class TrackingController implements PositionProvider.PositionListener, Ne
         }
     }
 
+    @Override
+    public void onPositionBatch(List<Position> positions) {
+        StatusActivity.addMessage(context.getString(R.string.status_location_update));
+        logBatch("write", positions);
+        writeBuffer.addAll(positions);
+        if (state != State.STOPPED) {
+            flushWriteBuffer();
+        }
+    }
+
     @Override
     public void onNetworkUpdate(boolean isOnline) {
         int message = isOnline ? R.string.status_network_online : R.string.status_network_offline;
         StatusActivity.addMessage(context.getString(message));
-        if (!this.isOnline && isOnline) {
-            read();
+        if (!isOnline) {
+            setState(State.OFFLINE);
+        } else if (state == State.OFFLINE) {
+            AlarmSender.getInstance(context).flush();
+            setState(retryPolicy.getState() == RetryPolicy.State.CLOSED ? State.DRAINING : State.BACKOFF);
+            List<Runnable> retries = new ArrayList<>(pendingRetries);
+            pendingRetries.clear();
+            for (Runnable retry : retries) {
+                retry.run();
+            }
+            fill();
         }
-        this.isOnline = isOnline;
     }
 
+    //
+    // Controller states:
+    //
+    // OFFLINE -> DRAINING on network connection, any state -> OFFLINE on disconnect
+    // DRAINING -> IDLE when the queue is empty, IDLE -> DRAINING on write
+    // DRAINING, IDLE -> BACKOFF when the circuit opens, BACKOFF -> DRAINING when it closes
+    //
+    // All transitions and callbacks run on the controller thread. Database
+    // and network operations run on their own executors.
     //
     // State transition examples:
     //
     // write -> read -> send -> delete -> read
     //
+    // Writes are collected in a buffer and committed to the database in
+    // a single transaction once it holds bufferSize positions or bufferTime
+    // has passed since the first one, whichever comes first.
+    //
+    // write -> send
+    //
+    // In IDLE state the queue is empty, so new positions are sent straight
+    // from memory. Only positions that fail to send, or are still in flight
+    // when the service stops, are stored, in time order.
+    //
+    // batch -> flush -> read -> send
+    //
+    // Locations delivered in batches by the provider skip the direct path
+    // and are stored together in a single transaction.
+    //
     // read -> send -> retry -> read -> send
     //
+    // With batching enabled, read, send and delete operate on a list
+    // of consecutive positions instead of a single one.
+    //
+    // write -> send, read -> send -> delete -> pause -> read
+    //
+    // With the live lane enabled, new positions are sent straight from
+    // memory in any online state, one at a time, so the server always gets
+    // the latest location first. Stored positions are drained in parallel,
+    // and after each batch the bulk lane pauses so that it only uses
+    // bulkShare percent of the time.
+    //
+    // Up to window batches are in flight at the same time. Reads walk
+    // the queue by id, so every batch is acknowledged and deleted on its
+    // own and a failed batch is retried without blocking the others.
+    //
 
     private void log(String action, Position position) {
         if (position != null) {
@@ -127,16 +341,67 @@ public class TrackingController implements PositionProvider.PositionListener, Ne
         Log.d(TAG, action);
     }
 
+    private void logBatch(String action, List<Position> positions) {
+        if (positions.size() == 1) {
+            log(action, positions.get(0));
+        } else {
+            Log.d(TAG, action + " (" +
+                    "ids:" + positions.get(0).getId() + "-" + positions.get(positions.size() - 1).getId() +
+                    " count:" + positions.size() + ")");
+        }
+    }
+
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flushWriteBuffer();
+        }
+    };
+
+    private final Comparator<Position> timeComparator = new Comparator<Position>() {
+        @Override
+        public int compare(Position p1, Position p2) {
+            return p1.getTime().compareTo(p2.getTime());
+        }
+    };
+
     private void write(Position position) {
+        if (liveLane) {
+            if ((state == State.IDLE || state == State.DRAINING) && liveInFlight == 0) {
+                sendLive(position);
+                return;
+            }
+        } else if (state == State.IDLE && writeBuffer.isEmpty() && pendingWrites == 0 && hasCapacity()) {
+            sendLive(position);
+            return;
+        }
         log("write", position);
+        writeBuffer.add(position);
+        if (writeBuffer.size() >= bufferSize || bufferTime == 0) {
+            flushWriteBuffer();
+        } else if (writeBuffer.size() == 1) {
+            handler.postDelayed(flushRunnable, bufferTime);
+        }
+    }
+
+    private void flushWriteBuffer() {
+        if (writeBuffer.isEmpty() || !livePositions.isEmpty()) {
+            return;
+        }
+        handler.removeCallbacks(flushRunnable);
+        List<Position> positions = writeBuffer;
+        writeBuffer = new ArrayList<>();
+        logBatch("flush", positions);
         lock();
-        databaseHelper.insertPositionAsync(position, new DatabaseHelper.DatabaseHandler<Void>() {
+        pendingWrites += 1;
+        positionStore.insertPositionsAsync(positions, new PositionStore.StoreHandler<Void>() {
             @Override
             public void onComplete(boolean success, Void result) {
+                pendingWrites -= 1;
                 if (success) {
-                    if (isOnline && isWaiting) {
-                        read();
-                        isWaiting = false;
+                    if (state == State.IDLE) {
+                        setState(State.DRAINING);
+                        fill();
                     }
                 }
                 unlock();
@@ -144,74 +409,284 @@ public class TrackingController implements PositionProvider.PositionListener, Ne
         });
     }
 
+    private void sendLive(Position position) {
+        log("send live", position);
+        Statistics.increment(R.string.statistics_live);
+        liveInFlight += 1;
+        livePositions.add(position);
+        List<String> entries = new ArrayList<>();
+        if (batchSize > 1) {
+            entries.add(ProtocolFormatter.formatEntry(position, format));
+        }
+        send(Collections.singletonList(position), entries, 0);
+    }
+
+    private void completeLive(List<Position> positions) {
+        livePositions.removeAll(positions);
+        liveInFlight -= 1;
+        flushWriteBuffer();
+        fill();
+    }
+
+    private void spill(List<Position> positions) {
+        logBatch("spill", positions);
+        livePositions.removeAll(positions);
+        liveInFlight -= 1;
+        writeBuffer.addAll(positions);
+        Collections.sort(writeBuffer, timeComparator);
+        flushWriteBuffer();
+        fill();
+    }
+
+    private boolean hasCapacity() {
+        return inFlight + (liveLane ? 0 : liveInFlight) < window;
+    }
+
+    private final Runnable fillRunnable = new Runnable() {
+        @Override
+        public void run() {
+            fill();
+        }
+    };
+
+    private void fill() {
+        if (state == State.DRAINING && !isReading && hasCapacity()) {
+            long delay = bulkResumeTime - SystemClock.elapsedRealtime();
+            if (delay > 0) {
+                handler.removeCallbacks(fillRunnable);
+                handler.postDelayed(fillRunnable, delay);
+            } else {
+                read();
+            }
+        }
+    }
+
+    private void throttle(long duration) {
+        if (liveLane && bulkShare < 100) {
+            bulkResumeTime = SystemClock.elapsedRealtime() + duration * (100 - bulkShare) / bulkShare;
+        }
+    }
+
+    private void complete() {
+        inFlight -= 1;
+        fill();
+    }
+
     private void read() {
         log("read", null);
         lock();
-        databaseHelper.selectPositionAsync(new DatabaseHelper.DatabaseHandler<Position>() {
+        isReading = true;
+        inFlight += 1;
+        positionStore.selectPositionsAsync(lastReadId, batchSize, new PositionStore.StoreHandler<List<Position>>() {
             @Override
-            public void onComplete(boolean success, Position result) {
+            public void onComplete(boolean success, List<Position> result) {
+                isReading = false;
                 if (success) {
-                    if (result != null) {
-                        if (result.getDeviceId().equals(preferences.getString(MainFragment.KEY_DEVICE, null))) {
-                            send(result);
+                    if (!result.isEmpty()) {
+                        String deviceId = preferences.getString(MainFragment.KEY_DEVICE, null);
+                        List<Position> positions;
+                        if (isSendable(result.get(0), deviceId)) {
+                            positions = sendBatch(result, result.get(0).getDeviceId());
                         } else {
-                            delete(result);
+                            positions = selectForeign(result, deviceId);
+                            delete(positions);
                         }
+                        lastReadId = positions.get(positions.size() - 1).getId();
+                        fill();
                     } else {
-                        isWaiting = true;
+                        inFlight -= 1;
+                        if (state == State.DRAINING) {
+                            setState(State.IDLE);
+                        }
                     }
                 } else {
-                    retry();
+                    inFlight -= 1;
+                    retry(new Runnable() {
+                        @Override
+                        public void run() {
+                            fill();
+                        }
+                    }, RETRY_DELAY);
                 }
                 unlock();
             }
         });
     }
 
-    private void delete(Position position) {
-        log("delete", position);
+    private List<Position> sendBatch(List<Position> positions, String deviceId) {
+        List<Position> batch = new ArrayList<>();
+        List<String> entries = new ArrayList<>();
+        int size = 0;
+        for (Position position : positions) {
+            if (!deviceId.equals(position.getDeviceId())) {
+                break;
+            }
+            if (batchSize > 1) {
+                String entry = ProtocolFormatter.formatEntry(position, format);
+                size += entry.length() + 1;
+                if (!batch.isEmpty() && size > batchBytes) {
+                    break;
+                }
+                entries.add(entry);
+            }
+            batch.add(position);
+        }
+        send(batch, entries, 0);
+        return batch;
+    }
+
+    // Positions without a device identifier can never be sent and are
+    // discarded together with foreign ones
+    private boolean isSendable(Position position, String deviceId) {
+        return position.getDeviceId() != null && (keepForeign || position.getDeviceId().equals(deviceId));
+    }
+
+    private List<Position> selectForeign(List<Position> positions, String deviceId) {
+        List<Position> foreign = new ArrayList<>();
+        for (Position position : positions) {
+            if (isSendable(position, deviceId)) {
+                break;
+            }
+            foreign.add(position);
+        }
+        return foreign;
+    }
+
+    private void delete(final List<Position> positions) {
+        logBatch("delete", positions);
         lock();
-        databaseHelper.deletePositionAsync(position.getId(), new DatabaseHelper.DatabaseHandler<Void>() {
+        long[] ids = new long[positions.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = positions.get(i).getId();
+        }
+        positionStore.deletePositionsAsync(ids, new PositionStore.StoreHandler<Void>() {
             @Override
             public void onComplete(boolean success, Void result) {
                 if (success) {
-                    read();
+                    complete();
                 } else {
-                    retry();
+                    retry(new Runnable() {
+                        @Override
+                        public void run() {
+                            delete(positions);
+                        }
+                    }, RETRY_DELAY);
                 }
                 unlock();
             }
         });
     }
 
-    private void send(final Position position) {
-        log("send", position);
+    private RequestManager.Request formatRequest(List<Position> positions, List<String> entries) {
+        if (batchSize == 1) {
+            return new RequestManager.Request(ProtocolFormatter.formatRequest(url, positions.get(0)));
+        }
+        return ProtocolFormatter.formatRequest(url, entries, format, encoding);
+    }
+
+    private void rejectEncoding() {
+        Log.i(TAG, "encoding " + encoding + " rejected");
+        encoding = ProtocolFormatter.ENCODING_NONE;
+        Set<String> rejected = new HashSet<>(
+                preferences.getStringSet(MainFragment.KEY_ENCODING_REJECTED, new HashSet<String>()));
+        rejected.add(url);
+        preferences.edit().putStringSet(MainFragment.KEY_ENCODING_REJECTED, rejected).apply();
+    }
+
+    private void updateRetryState() {
+        RetryPolicy.State circuitState = retryPolicy.getState();
+        if (circuitState != retryState) {
+            retryState = circuitState;
+            Log.i(TAG, "circuit " + circuitState);
+            Statistics.set(R.string.statistics_circuit, circuitState.toString());
+            if (circuitState == RetryPolicy.State.OPEN) {
+                StatusActivity.addMessage(context.getString(R.string.status_circuit_open));
+                if (state == State.DRAINING || state == State.IDLE) {
+                    setState(State.BACKOFF);
+                }
+            } else if (circuitState == RetryPolicy.State.CLOSED) {
+                StatusActivity.addMessage(context.getString(R.string.status_circuit_closed));
+                if (state == State.BACKOFF) {
+                    setState(State.DRAINING);
+                    fill();
+                }
+            }
+        }
+    }
+
+    private void send(final List<Position> positions, final List<String> entries, final int attempts) {
+        final boolean live = positions.get(0).getId() == 0;
+        if (!retryPolicy.tryAcquire()) {
+            if (live) {
+                spill(positions);
+            } else {
+                retry(new Runnable() {
+                    @Override
+                    public void run() {
+                        send(positions, entries, attempts);
+                    }
+                }, Math.max(retryPolicy.getDelay(), RETRY_BASE_DELAY));
+            }
+            return;
+        }
+        logBatch("send", positions);
         lock();
-        String request = ProtocolFormatter.formatRequest(url, position);
+        final long startTime = SystemClock.elapsedRealtime();
+        final RequestManager.Request request = formatRequest(positions, entries);
         RequestManager.sendRequestAsync(request, new RequestManager.RequestHandler() {
             @Override
-            public void onComplete(boolean success) {
+            public void onComplete(boolean success, RequestManager.Response response) {
                 if (success) {
-                    delete(position);
+                    retryPolicy.onSuccess();
+                    updateRetryState();
+                    if (live) {
+                        completeLive(positions);
+                    } else {
+                        throttle(SystemClock.elapsedRealtime() - startTime);
+                        delete(positions);
+                    }
+                } else if (response != null && response.getCode() == HTTP_UNSUPPORTED_MEDIA_TYPE
+                        && request.getContentEncoding() != null) {
+                    retryPolicy.onSuccess();
+                    rejectEncoding();
+                    send(positions, entries, attempts);
                 } else {
                     StatusActivity.addMessage(context.getString(R.string.status_send_fail));
-                    retry();
+                    long delay;
+                    if (response != null) {
+                        delay = retryPolicy.onFailure(attempts + 1, response.getCode(), response.getRetryAfter());
+                    } else {
+                        delay = retryPolicy.onFailure(attempts + 1, 0, 0);
+                    }
+                    updateRetryState();
+                    if (live) {
+                        spill(positions);
+                    } else {
+                        retry(new Runnable() {
+                            @Override
+                            public void run() {
+                                send(positions, entries, attempts + 1);
+                            }
+                        }, delay);
+                    }
                 }
                 unlock();
             }
         });
     }
 
-    private void retry() {
+    private void retry(final Runnable action, long delay) {
         log("retry", null);
         handler.postDelayed(new Runnable() {
             @Override
             public void run() {
-                if (isOnline) {
-                    read();
+                if (state != State.OFFLINE) {
+                    action.run();
+                } else {
+                    pendingRetries.add(action);
                 }
             }
-        }, RETRY_DELAY);
+        }, delay);
     }
 
 }
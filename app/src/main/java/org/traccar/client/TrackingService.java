@@ -105,6 +105,21 @@ public class TrackingService extends Service {
         return START_STICKY;
     }
 
+    @Override
+    public void onLowMemory() {
+        if (trackingController != null) {
+            trackingController.flush();
+        }
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        // UI hidden only means the user left the app, it is not memory pressure
+        if (trackingController != null && level >= TRIM_MEMORY_RUNNING_LOW && level != TRIM_MEMORY_UI_HIDDEN) {
+            trackingController.flush();
+        }
+    }
+
     @Override
     public void onDestroy() {
         Log.i(TAG, "service destroy");
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2015 - 2018 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.client;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+public class UrlConnectionTransport implements RequestManager.Transport {
+
+    private static final String TAG = UrlConnectionTransport.class.getSimpleName();
+
+    private static final int BUFFER_SIZE = 1024;
+
+    private static void drain(InputStream inputStream) throws IOException {
+        if (inputStream != null) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            try {
+                while (inputStream.read(buffer) != -1);
+            } finally {
+                inputStream.close();
+            }
+        }
+    }
+
+    @Override
+    public RequestManager.Response send(RequestManager.Request request) throws IOException {
+        URL url = new URL(request.getUrl());
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setReadTimeout(RequestManager.TIMEOUT);
+        connection.setConnectTimeout(RequestManager.TIMEOUT);
+        connection.setRequestMethod("POST");
+        if (request.getBody() != null) {
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(request.getBody().length);
+            connection.setRequestProperty("Content-Type", request.getContentType());
+            if (request.getContentEncoding() != null) {
+                connection.setRequestProperty("Content-Encoding", request.getContentEncoding());
+            }
+            OutputStream outputStream = connection.getOutputStream();
+            try {
+                outputStream.write(request.getBody());
+            } finally {
+                outputStream.close();
+            }
+        } else {
+            connection.connect();
+        }
+        int code = connection.getResponseCode();
+        try {
+            drain(code < 400 ? connection.getInputStream() : connection.getErrorStream());
+        } catch (IOException error) {
+            Log.w(TAG, error);
+        }
+        return new RequestManager.Response(
+                code, RequestManager.parseRetryAfter(connection.getHeaderField("Retry-After")));
+    }
+
+    @Override
+    public void warmUp(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setReadTimeout(RequestManager.TIMEOUT);
+        connection.setConnectTimeout(RequestManager.TIMEOUT);
+        connection.setRequestMethod("HEAD");
+        int code = connection.getResponseCode();
+        drain(code < 400 ? connection.getInputStream() : connection.getErrorStream());
+    }
+
+}
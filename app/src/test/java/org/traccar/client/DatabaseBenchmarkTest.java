@@ -0,0 +1,185 @@
+
+package org.traccar.client;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.location.Location;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class DatabaseBenchmarkTest {
+
+    private static final int COUNT = 1000;
+
+    private static void report(String name, long start) {
+        long duration = Math.max(1, System.nanoTime() - start);
+        System.out.println(name + ": " + (COUNT * 1000000000L / duration) + " ops/s");
+    }
+
+    private static void reportSize(String name, PositionStore store) {
+        System.out.println(name + ": " + (store.getBytes() / Math.max(1, store.getRows())) + " bytes/position");
+    }
+
+    private static void benchmarkStore(String name, PositionStore store) {
+        Position position = createPosition();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < COUNT; i++) {
+            store.insertPositions(Collections.singletonList(position));
+        }
+        report(name + " append", start);
+        reportSize(name + " size", store);
+
+        start = System.nanoTime();
+        long lastId = 0;
+        List<Position> positions;
+        do {
+            positions = store.selectPositions(lastId, 100);
+            if (!positions.isEmpty()) {
+                long[] ids = new long[positions.size()];
+                for (int i = 0; i < ids.length; i++) {
+                    ids[i] = positions.get(i).getId();
+                }
+                store.deletePositions(ids);
+                lastId = ids[ids.length - 1];
+            }
+        } while (!positions.isEmpty());
+        report(name + " drain", start);
+
+        assertEquals(0, store.getRows());
+    }
+
+    private static Position createPosition() {
+        Position position = new Position("123456789012345", new Location("gps"), 0);
+        position.setTime(new Date(0));
+        return position;
+    }
+
+    @Ignore
+    @Test
+    public void testLegacy() throws Exception {
+
+        // Baseline runs in its own database with the original rollback journal
+        File file = RuntimeEnvironment.application.getDatabasePath("legacy.db");
+        file.getParentFile().mkdirs();
+        SQLiteDatabase.deleteDatabase(file);
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(file, null);
+        DatabaseUtils.stringForQuery(db, "PRAGMA journal_mode=DELETE", null);
+        db.execSQL("CREATE TABLE legacy (" +
+                "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                "deviceId TEXT," +
+                "time INTEGER," +
+                "latitude REAL," +
+                "longitude REAL," +
+                "altitude REAL," +
+                "speed REAL," +
+                "course REAL," +
+                "accuracy REAL," +
+                "battery REAL," +
+                "mock INTEGER)");
+        Position position = createPosition();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < COUNT; i++) {
+            ContentValues values = new ContentValues();
+            values.put("deviceId", position.getDeviceId());
+            values.put("time", position.getTime().getTime());
+            values.put("latitude", position.getLatitude());
+            values.put("longitude", position.getLongitude());
+            values.put("altitude", position.getAltitude());
+            values.put("speed", position.getSpeed());
+            values.put("course", position.getCourse());
+            values.put("accuracy", position.getAccuracy());
+            values.put("battery", position.getBattery());
+            values.put("mock", 0);
+            db.insertOrThrow("legacy", null, values);
+        }
+        report("legacy insert", start);
+
+        start = System.nanoTime();
+        for (int i = 0; i < COUNT; i++) {
+            Cursor cursor = db.rawQuery("SELECT * FROM legacy ORDER BY id LIMIT 1", null);
+            try {
+                cursor.moveToFirst();
+                long id = cursor.getLong(cursor.getColumnIndex("id"));
+                db.delete("legacy", "id = ?", new String[] { String.valueOf(id) });
+            } finally {
+                cursor.close();
+            }
+        }
+        report("legacy select and delete", start);
+
+        assertEquals(0, DatabaseUtils.queryNumEntries(db, "legacy"));
+        db.close();
+
+    }
+
+    @Ignore
+    @Test
+    public void testCompiled() throws Exception {
+
+        DatabaseHelper databaseHelper = new DatabaseHelper(RuntimeEnvironment.application);
+        Position position = createPosition();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < COUNT; i++) {
+            databaseHelper.insertPosition(position);
+        }
+        report("compiled insert", start);
+
+        start = System.nanoTime();
+        for (int i = 0; i < COUNT; i++) {
+            databaseHelper.deletePosition(databaseHelper.selectPosition().getId());
+        }
+        report("compiled select and delete", start);
+
+        for (int i = 0; i < COUNT; i++) {
+            databaseHelper.insertPosition(position);
+        }
+
+        start = System.nanoTime();
+        long lastId = 0;
+        List<Position> positions;
+        do {
+            positions = databaseHelper.selectPositions(lastId, 100);
+            if (!positions.isEmpty()) {
+                long[] ids = new long[positions.size()];
+                for (int i = 0; i < ids.length; i++) {
+                    ids[i] = positions.get(i).getId();
+                }
+                databaseHelper.deletePositions(ids);
+                lastId = ids[ids.length - 1];
+            }
+        } while (!positions.isEmpty());
+        report("batched select and delete", start);
+
+        assertEquals(0, databaseHelper.selectPositions(0, COUNT).size());
+
+    }
+
+    @Ignore
+    @Test
+    public void testStores() throws Exception {
+
+        benchmarkStore("database", new DatabaseHelper(RuntimeEnvironment.application));
+        benchmarkStore("segment", new SegmentStore(RuntimeEnvironment.application));
+
+    }
+
+}
@@ -1,6 +1,8 @@
 
 package org.traccar.client;
 
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
 import android.location.Location;
 
 import org.junit.Test;
@@ -10,9 +12,14 @@ import org.robolectric.RuntimeEnvironment;
 import org.robolectric.annotation.Config;
 
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 @RunWith(RobolectricTestRunner.class)
 @Config(constants = BuildConfig.class, sdk = 21)
@@ -40,4 +47,229 @@ public class DatabaseHelperTest {
 
     }
 
+    @Test
+    public void testBatch() throws Exception {
+
+        DatabaseHelper databaseHelper = new DatabaseHelper(RuntimeEnvironment.application);
+
+        Position position = new Position("123456789012345", new Location("gps"), 0);
+        position.setTime(new Date(0));
+
+        for (int i = 0; i < 5; i++) {
+            databaseHelper.insertPosition(position);
+        }
+
+        List<Position> positions = databaseHelper.selectPositions(0, 3);
+
+        assertEquals(3, positions.size());
+
+        databaseHelper.deletePositions(new long[] { positions.get(0).getId(), positions.get(2).getId() });
+
+        assertEquals(3, databaseHelper.selectPositions(0, 5).size());
+
+        assertEquals(2, databaseHelper.selectPositions(positions.get(2).getId(), 5).size());
+
+        databaseHelper.deletePositions(new long[] { positions.get(1).getId() });
+
+        assertEquals(2, databaseHelper.selectPositions(0, 5).size());
+
+    }
+
+    @Test
+    public void testQuota() throws Exception {
+
+        DatabaseHelper databaseHelper = new DatabaseHelper(RuntimeEnvironment.application);
+        databaseHelper.setQuota(4, 0, EvictionPolicy.create(EvictionPolicy.FIRST_LATEST));
+
+        Position position = new Position("123456789012345", new Location("gps"), 0);
+        position.setTime(new Date(0));
+
+        for (int i = 0; i < 6; i++) {
+            databaseHelper.insertPosition(position);
+        }
+
+        List<Position> positions = databaseHelper.selectPositions(0, 10);
+
+        assertEquals(4, positions.size());
+        assertEquals(1, positions.get(0).getId());
+        assertEquals(4, positions.get(1).getId());
+        assertEquals(6, positions.get(3).getId());
+        assertEquals(4, databaseHelper.getRows());
+
+    }
+
+    @Test
+    public void testThinQuota() throws Exception {
+
+        DatabaseHelper databaseHelper = new DatabaseHelper(RuntimeEnvironment.application);
+        databaseHelper.setQuota(50, 0, EvictionPolicy.create(EvictionPolicy.THIN));
+
+        Position position = new Position("123456789012345", new Location("gps"), 0);
+        position.setTime(new Date(0));
+
+        for (int i = 0; i < 1000; i++) {
+            databaseHelper.insertPosition(position);
+        }
+
+        List<Position> positions = databaseHelper.selectPositions(0, 100);
+
+        assertTrue(positions.size() <= 50);
+        assertEquals(positions.size(), databaseHelper.getRows());
+        assertEquals(1000, positions.get(positions.size() - 1).getId());
+        assertTrue(positions.get(0).getId() < positions.get(positions.size() - 1).getId() - positions.size());
+        for (int i = 1; i < positions.size(); i++) {
+            assertTrue(positions.get(i).getId() - positions.get(i - 1).getId() <= 8);
+        }
+        for (int i = positions.size() / 2; i < positions.size(); i++) {
+            assertEquals(positions.get(i - 1).getId() + 1, positions.get(i).getId());
+        }
+
+    }
+
+    @Test
+    public void testThinRead() throws Exception {
+
+        DatabaseHelper databaseHelper = new DatabaseHelper(RuntimeEnvironment.application);
+        databaseHelper.setQuota(10, 0, EvictionPolicy.create(EvictionPolicy.THIN));
+
+        Position position = new Position("123456789012345", new Location("gps"), 0);
+        position.setTime(new Date(0));
+
+        for (int i = 0; i < 10; i++) {
+            databaseHelper.insertPosition(position);
+        }
+        assertEquals(5, databaseHelper.selectPositions(0, 5).size());
+
+        databaseHelper.insertPosition(position);
+
+        List<Position> positions = databaseHelper.selectPositions(0, 20);
+        assertEquals(9, positions.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i + 1, positions.get(i).getId());
+        }
+        assertEquals(7, positions.get(5).getId());
+
+    }
+
+    @Test
+    public void testEvictionPolicy() throws Exception {
+
+        long[] candidates = new long[] { 1, 2, 3, 4, 5, 6 };
+
+        EvictionPolicy oldest = EvictionPolicy.create(EvictionPolicy.OLDEST);
+        assertEquals(2, oldest.getCandidates(2));
+        assertArrayEquals(new long[] { 1, 2 }, oldest.select(candidates, 2));
+
+        EvictionPolicy thin = EvictionPolicy.create(EvictionPolicy.THIN);
+        assertEquals(12, thin.getCandidates(3));
+        assertArrayEquals(new long[] { 1, 3, 5 }, thin.select(candidates, 3));
+        assertArrayEquals(new long[] { 1, 4 }, thin.select(candidates, 2));
+        assertArrayEquals(candidates, thin.select(candidates, 6));
+
+        EvictionPolicy firstLatest = EvictionPolicy.create(EvictionPolicy.FIRST_LATEST);
+        assertEquals(3, firstLatest.getCandidates(2));
+        assertArrayEquals(new long[] { 2, 3 }, firstLatest.select(candidates, 2));
+
+    }
+
+    @Test
+    public void testChangeDevice() throws Exception {
+
+        DatabaseHelper databaseHelper = new DatabaseHelper(RuntimeEnvironment.application);
+
+        Position position = new Position("123456789012345", new Location("gps"), 0);
+        position.setTime(new Date(0));
+        databaseHelper.insertPosition(position);
+        databaseHelper.insertPosition(position);
+
+        position.setDeviceId("987654321098765");
+        databaseHelper.insertPosition(position);
+
+        databaseHelper.changeDevice("987654321098765", false);
+
+        assertEquals(1, databaseHelper.getRows());
+        assertEquals("987654321098765", databaseHelper.selectPosition().getDeviceId());
+
+        position.setDeviceId("123456789012345");
+        databaseHelper.insertPosition(position);
+
+        databaseHelper.changeDevice("555555555555555", true);
+
+        List<Position> positions = databaseHelper.selectPositions(0, 5);
+
+        assertEquals(2, positions.size());
+        assertEquals("555555555555555", positions.get(0).getDeviceId());
+        assertEquals("555555555555555", positions.get(1).getDeviceId());
+
+    }
+
+    @Test
+    public void testMigration() throws Exception {
+
+        SQLiteOpenHelper legacyHelper = new SQLiteOpenHelper(
+                RuntimeEnvironment.application, DatabaseHelper.DATABASE_NAME, null, 3) {
+            @Override
+            public void onCreate(SQLiteDatabase db) {
+                db.execSQL("CREATE TABLE position (" +
+                        "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                        "deviceId TEXT," +
+                        "time INTEGER," +
+                        "latitude REAL," +
+                        "longitude REAL," +
+                        "altitude REAL," +
+                        "speed REAL," +
+                        "course REAL," +
+                        "accuracy REAL," +
+                        "battery REAL," +
+                        "mock INTEGER)");
+            }
+
+            @Override
+            public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            }
+        };
+        SQLiteDatabase db = legacyHelper.getWritableDatabase();
+        db.execSQL("INSERT INTO position " +
+                "(id, deviceId, time, latitude, longitude, altitude, speed, course, accuracy, battery, mock) " +
+                "VALUES (7, '123456789012345', 1000, 51.5012345, -0.1234567, 12.3, 24.56, 359.9, 4.5, 87.5, 1)");
+        legacyHelper.close();
+
+        DatabaseHelper databaseHelper = new DatabaseHelper(RuntimeEnvironment.application);
+
+        Position position = databaseHelper.selectPosition();
+
+        assertNotNull(position);
+        assertEquals(7, position.getId());
+        assertEquals("123456789012345", position.getDeviceId());
+        assertEquals(1000, position.getTime().getTime());
+        assertEquals(51.5012345, position.getLatitude(), 0.0000001);
+        assertEquals(-0.1234567, position.getLongitude(), 0.0000001);
+        assertEquals(12.3, position.getAltitude(), 0.1);
+        assertEquals(24.56, position.getSpeed(), 0.01);
+        assertEquals(359.9, position.getCourse(), 0.1);
+        assertEquals(4.5, position.getAccuracy(), 0.1);
+        assertEquals(87.5, position.getBattery(), 0.1);
+        assertTrue(position.getMock());
+
+    }
+
+    @Test
+    public void testAlarms() throws Exception {
+
+        DatabaseHelper databaseHelper = new DatabaseHelper(RuntimeEnvironment.application);
+
+        long first = databaseHelper.insertAlarm("http://localhost:5055?id=1&alarm=sos");
+        long second = databaseHelper.insertAlarm("http://localhost:5055?id=1");
+
+        Map<Long, String> alarms = databaseHelper.selectAlarms();
+        assertArrayEquals(new Long[] { first, second }, alarms.keySet().toArray(new Long[0]));
+        assertEquals("http://localhost:5055?id=1&alarm=sos", alarms.get(first));
+
+        databaseHelper.deleteAlarm(first);
+
+        assertEquals(1, databaseHelper.selectAlarms().size());
+        assertEquals(0, databaseHelper.getRows());
+
+    }
+
 }
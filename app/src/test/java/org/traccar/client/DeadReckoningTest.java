@@ -0,0 +1,88 @@
+
+package org.traccar.client;
+
+import android.location.Location;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class DeadReckoningTest {
+
+    private static final double EARTH_RADIUS = 6371000.0;
+    private static final int DURATION = 30 * 60;
+
+    private static List<Location> createTrace(boolean highway) {
+        Random random = new Random(1);
+        List<Location> trace = new ArrayList<>();
+        double latitude = 51.5;
+        double longitude = -0.12;
+        double heading = 0;
+        double speed = highway ? 25 : 10;
+        for (int i = 0; i < DURATION; i++) {
+            if (highway) {
+                heading = 10 * Math.sin(i / 600.0);
+            } else if (i > 0 && i % 20 == 0) {
+                heading = (heading + ((i / 20) % 2 == 1 ? 90 : 270)) % 360;
+            }
+            double bearing = Math.toRadians(heading);
+            latitude += Math.toDegrees(speed * Math.cos(bearing) / EARTH_RADIUS);
+            longitude += Math.toDegrees(
+                    speed * Math.sin(bearing) / (EARTH_RADIUS * Math.cos(Math.toRadians(latitude))));
+
+            Location location = new Location("gps");
+            location.setTime(i * 1000L);
+            location.setLatitude(latitude + Math.toDegrees(random.nextGaussian() * 3 / EARTH_RADIUS));
+            location.setLongitude(longitude + Math.toDegrees(random.nextGaussian() * 3
+                    / (EARTH_RADIUS * Math.cos(Math.toRadians(latitude)))));
+            location.setSpeed((float) (speed + random.nextGaussian() * 0.5));
+            location.setBearing((float) ((heading + random.nextGaussian() + 360) % 360));
+            trace.add(location);
+        }
+        return trace;
+    }
+
+    private static int simulate(List<Location> trace, LocationFilter filter) {
+        FilterChain chain = new FilterChain();
+        chain.addFilter(R.string.statistics_filter_report, filter);
+        int count = 0;
+        for (Location location : trace) {
+            if (chain.accept(location)) {
+                count += 1;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void testHighway() throws Exception {
+
+        List<Location> trace = createTrace(true);
+        int distance = simulate(trace, new LocationFilter.Report(600 * 1000, 100, 0));
+        int predicted = simulate(trace, new LocationFilter.DeadReckoning(50, 600 * 1000));
+
+        assertTrue(predicted * 10 <= distance);
+
+    }
+
+    @Test
+    public void testCity() throws Exception {
+
+        List<Location> trace = createTrace(false);
+        int distance = simulate(trace, new LocationFilter.Report(600 * 1000, 100, 0));
+        int predicted = simulate(trace, new LocationFilter.DeadReckoning(50, 600 * 1000));
+
+        assertTrue(predicted < distance);
+
+    }
+
+}
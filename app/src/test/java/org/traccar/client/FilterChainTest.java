@@ -0,0 +1,64 @@
+
+package org.traccar.client;
+
+import android.location.Location;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class FilterChainTest {
+
+    private static Location createLocation(long time, double latitude, float accuracy, float bearing) {
+        Location location = new Location("gps");
+        location.setTime(time);
+        location.setLatitude(latitude);
+        location.setLongitude(0);
+        location.setAccuracy(accuracy);
+        location.setBearing(bearing);
+        return location;
+    }
+
+    @Test
+    public void testBearingDelta() throws Exception {
+
+        assertEquals(2, LocationFilter.getBearingDelta(359, 1), 0.001);
+        assertEquals(2, LocationFilter.getBearingDelta(1, 359), 0.001);
+        assertEquals(180, LocationFilter.getBearingDelta(90, 270), 0.001);
+
+    }
+
+    @Test
+    public void testChain() throws Exception {
+
+        FilterChain chain = new FilterChain();
+        chain.addFilter(R.string.statistics_filter_duplicate, new LocationFilter.Duplicate());
+        chain.addFilter(R.string.statistics_filter_accuracy, new LocationFilter.Accuracy(50));
+        chain.addFilter(R.string.statistics_filter_speed, new LocationFilter.Speed(50));
+        chain.addFilter(R.string.statistics_filter_jitter, new LocationFilter.Jitter(20, 60000));
+        chain.addFilter(R.string.statistics_filter_report, new LocationFilter.Report(60000, 0, 10));
+
+        assertTrue(chain.accept(createLocation(1000, 0, 10, 359)));
+        assertFalse(chain.accept(createLocation(1000, 0.001, 10, 90)));
+        assertFalse(chain.accept(createLocation(2000, 0.001, 100, 90)));
+        assertFalse(chain.accept(createLocation(3000, 1, 10, 90)));
+        assertFalse(chain.accept(createLocation(4000, 0.0001, 10, 90)));
+        assertFalse(chain.accept(createLocation(11000, 0.001, 10, 1)));
+        assertTrue(chain.accept(createLocation(12000, 0.001, 10, 90)));
+
+        assertEquals(1, chain.getDropped(R.string.statistics_filter_duplicate));
+        assertEquals(1, chain.getDropped(R.string.statistics_filter_accuracy));
+        assertEquals(1, chain.getDropped(R.string.statistics_filter_speed));
+        assertEquals(1, chain.getDropped(R.string.statistics_filter_jitter));
+        assertEquals(1, chain.getDropped(R.string.statistics_filter_report));
+
+    }
+
+}
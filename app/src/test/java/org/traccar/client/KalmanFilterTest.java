@@ -0,0 +1,52 @@
+
+package org.traccar.client;
+
+import android.location.Location;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class KalmanFilterTest {
+
+    @Test
+    public void testSmoothing() throws Exception {
+
+        KalmanFilter filter = new KalmanFilter();
+        Random random = new Random(1);
+
+        double metersPerDegree = Math.toRadians(6371000.0);
+        double rawError = 0;
+        double smoothedError = 0;
+
+        for (int i = 0; i < 120; i++) {
+            double latitude = 51.5 + i * 10 / metersPerDegree;
+            Location location = new Location("gps");
+            location.setTime(i * 1000);
+            location.setLatitude(latitude + random.nextGaussian() * 15 / metersPerDegree);
+            location.setLongitude(-0.12);
+            location.setAccuracy(15);
+
+            double raw = location.getLatitude();
+            assertTrue(filter.accept(location, null));
+            assertEquals(raw, filter.getRawLatitude(), 0);
+
+            if (i >= 20) {
+                rawError += Math.abs(raw - latitude) * metersPerDegree;
+                smoothedError += Math.abs(location.getLatitude() - latitude) * metersPerDegree;
+            }
+        }
+
+        assertTrue(smoothedError < rawError * 0.8);
+
+    }
+
+}
@@ -0,0 +1,50 @@
+
+package org.traccar.client;
+
+import android.location.Location;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class MotionClassifierTest {
+
+    private static Location createLocation(long time, double speed) {
+        Location location = new Location("gps");
+        location.setTime(time);
+        location.setLatitude(51.5);
+        location.setLongitude(-0.12);
+        location.setAccuracy(5);
+        location.setSpeed((float) speed);
+        return location;
+    }
+
+    @Test
+    public void testHysteresis() throws Exception {
+
+        MotionClassifier classifier = new MotionClassifier();
+
+        assertEquals(MotionClassifier.State.DRIVING, classifier.update(createLocation(0, 15)));
+
+        assertEquals(MotionClassifier.State.DRIVING, classifier.update(createLocation(1000, 3)));
+        assertEquals(MotionClassifier.State.DRIVING, classifier.update(createLocation(2000, 1.5)));
+        assertEquals(MotionClassifier.State.WALKING, classifier.update(createLocation(3000, 1.5)));
+
+        assertEquals(MotionClassifier.State.WALKING, classifier.update(createLocation(4000, 3)));
+        assertEquals(MotionClassifier.State.WALKING, classifier.update(createLocation(5000, 0)));
+        assertEquals(MotionClassifier.State.WALKING, classifier.update(createLocation(6000, 0)));
+        assertEquals(MotionClassifier.State.WALKING, classifier.update(createLocation(60000, 0)));
+        assertEquals(MotionClassifier.State.STATIONARY, classifier.update(createLocation(130000, 0)));
+
+        assertEquals(MotionClassifier.State.STATIONARY, classifier.update(createLocation(140000, 0.5)));
+        assertEquals(MotionClassifier.State.STATIONARY, classifier.update(createLocation(150000, 5)));
+        assertEquals(MotionClassifier.State.DRIVING, classifier.update(createLocation(160000, 5)));
+
+    }
+
+}
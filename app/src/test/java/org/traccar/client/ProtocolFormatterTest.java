@@ -8,7 +8,12 @@ import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.zip.GZIPInputStream;
 
 import static org.junit.Assert.assertEquals;
 
@@ -45,4 +50,63 @@ public class ProtocolFormatterTest {
         String url = ProtocolFormatter.formatRequest("http://localhost:5055/path", position, "alert message");
         assertEquals("http://localhost:5055/path?id=123456789012345&timestamp=0&lat=0.0&lon=0.0&speed=0.0&bearing=0.0&altitude=0.0&accuracy=0.0&batt=0.0&alarm=alert%20message", url);
     }
+
+    @Test
+    public void testFormatDeviceState() throws Exception {
+
+        Position position = new Position("123456789012345", new Location("gps"), 0);
+        position.setTime(new Date(0));
+        position.setCharging(true);
+        position.setNetwork(DeviceState.NETWORK_WIFI);
+
+        String url = ProtocolFormatter.formatRequest("http://localhost:5055", position);
+        assertEquals("http://localhost:5055?id=123456789012345&timestamp=0&lat=0.0&lon=0.0&speed=0.0&bearing=0.0&altitude=0.0&accuracy=0.0&batt=0.0&charge=true&network=wifi", url);
+    }
+
+    @Test
+    public void testFormatLine() throws Exception {
+
+        Position position = new Position("123456789012345", new Location("gps"), 0);
+        position.setTime(new Date(0));
+
+        String line = ProtocolFormatter.formatLine(position);
+        assertEquals("id=123456789012345&timestamp=0&lat=0.0&lon=0.0&speed=0.0&bearing=0.0&altitude=0.0&accuracy=0.0&batt=0.0", line);
+    }
+
+    @Test
+    public void testFormatJsonRequest() throws Exception {
+
+        Position position = new Position("123456789012345", new Location("gps"), 0);
+        position.setTime(new Date(0));
+
+        String entry = ProtocolFormatter.formatEntry(position, ProtocolFormatter.FORMAT_JSON);
+        assertEquals("{\"id\":\"123456789012345\",\"timestamp\":0,\"lat\":0.0,\"lon\":0.0,\"speed\":0.0,\"bearing\":0.0,\"altitude\":0.0,\"accuracy\":0.0,\"batt\":0.0}", entry);
+
+        RequestManager.Request request = ProtocolFormatter.formatRequest("http://localhost:5055",
+                Arrays.asList(entry, entry), ProtocolFormatter.FORMAT_JSON, ProtocolFormatter.ENCODING_NONE);
+        assertEquals("application/json", request.getContentType());
+        assertEquals("[" + entry + "," + entry + "]", new String(request.getBody(), "UTF-8"));
+    }
+
+    @Test
+    public void testFormatCompressedRequest() throws Exception {
+
+        Position position = new Position("123456789012345", new Location("gps"), 0);
+        position.setTime(new Date(0));
+
+        String entry = ProtocolFormatter.formatLine(position);
+
+        RequestManager.Request request = ProtocolFormatter.formatRequest("http://localhost:5055",
+                Arrays.asList(entry, entry), ProtocolFormatter.FORMAT_TEXT, ProtocolFormatter.ENCODING_GZIP);
+        assertEquals("gzip", request.getContentEncoding());
+
+        InputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(request.getBody()));
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int length;
+        while ((length = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, length);
+        }
+        assertEquals(entry + "\n" + entry + "\n", new String(outputStream.toByteArray(), "UTF-8"));
+    }
 }
@@ -7,6 +7,10 @@ import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 @RunWith(RobolectricTestRunner.class)
@@ -21,4 +25,30 @@ public class RequestManagerTest {
 
     }
 
+    @Test
+    public void testInvalidUrl() throws Exception {
+
+        RequestManager.Transport transport = RequestManager.getTransport();
+        RequestManager.setTransport(new RequestManager.Transport() {
+            @Override
+            public RequestManager.Response send(RequestManager.Request request) throws IOException {
+                throw new IllegalArgumentException("unexpected url: " + request.getUrl());
+            }
+
+            @Override
+            public void warmUp(String url) throws IOException {
+                throw new IllegalArgumentException("unexpected url: " + url);
+            }
+        });
+        try {
+            assertEquals(RequestManager.CODE_INVALID,
+                    RequestManager.executeRequest(new RequestManager.Request("invalid")).getCode());
+            assertFalse(RequestManager.sendRequest("invalid"));
+            RequestManager.warmUp("invalid");
+        } finally {
+            RequestManager.setTransport(transport);
+        }
+
+    }
+
 }
@@ -0,0 +1,99 @@
+
+package org.traccar.client;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RetryPolicyTest {
+
+    private long time;
+
+    private RetryPolicy retryPolicy;
+
+    @Before
+    public void setUp() {
+        time = 0;
+        retryPolicy = new RetryPolicy(1000, 60000, 3, 30000, new Random() {
+            @Override
+            public double nextDouble() {
+                return 0.5;
+            }
+        }, new RetryPolicy.Clock() {
+            @Override
+            public long currentTime() {
+                return time;
+            }
+        });
+    }
+
+    @Test
+    public void testBackoff() throws Exception {
+
+        assertEquals(500, retryPolicy.onFailure(0, 0));
+        assertEquals(1000, retryPolicy.onFailure(0, 0));
+        assertEquals(RetryPolicy.State.CLOSED, retryPolicy.getState());
+
+        retryPolicy.onSuccess();
+
+        assertEquals(500, retryPolicy.onFailure(500, 0));
+
+    }
+
+    @Test
+    public void testAttempts() throws Exception {
+
+        assertEquals(500, retryPolicy.onFailure(1, 0, 0));
+        assertEquals(1000, retryPolicy.onFailure(2, 0, 0));
+
+        retryPolicy.onSuccess();
+
+        assertEquals(2000, retryPolicy.onFailure(3, 0, 0));
+        assertEquals(500, retryPolicy.onFailure(1, 0, 0));
+
+    }
+
+    @Test
+    public void testRetryAfter() throws Exception {
+
+        assertEquals(10000, retryPolicy.onFailure(RetryPolicy.HTTP_SERVICE_UNAVAILABLE, 10000));
+        assertEquals(1000, retryPolicy.onFailure(400, 10000));
+
+    }
+
+    @Test
+    public void testCircuitBreaker() throws Exception {
+
+        retryPolicy.onFailure(0, 0);
+        retryPolicy.onFailure(0, 0);
+        assertEquals(30000, retryPolicy.onFailure(0, 0));
+
+        assertEquals(RetryPolicy.State.OPEN, retryPolicy.getState());
+        assertFalse(retryPolicy.tryAcquire());
+        assertEquals(30000, retryPolicy.getDelay());
+
+        time += 30000;
+
+        assertEquals(RetryPolicy.State.HALF_OPEN, retryPolicy.getState());
+        assertTrue(retryPolicy.tryAcquire());
+        assertFalse(retryPolicy.tryAcquire());
+
+        retryPolicy.onFailure(0, 0);
+        assertEquals(RetryPolicy.State.OPEN, retryPolicy.getState());
+
+        time += 30000;
+
+        assertTrue(retryPolicy.tryAcquire());
+        retryPolicy.onSuccess();
+
+        assertEquals(RetryPolicy.State.CLOSED, retryPolicy.getState());
+        assertTrue(retryPolicy.tryAcquire());
+
+    }
+
+}
@@ -0,0 +1,143 @@
+
+package org.traccar.client;
+
+import android.location.Location;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class SegmentStoreTest {
+
+    private static List<Position> createPositions(String deviceId, int count) {
+        List<Position> positions = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Location location = new Location("gps");
+            location.setLatitude(51.5012345);
+            location.setLongitude(-0.1234567);
+            location.setSpeed(10);
+            Position position = new Position(deviceId, location, 87.5);
+            position.setTime(new Date(i * 1000));
+            positions.add(position);
+        }
+        return positions;
+    }
+
+    @Test
+    public void test() throws Exception {
+
+        SegmentStore store = new SegmentStore(RuntimeEnvironment.application);
+
+        store.insertPositions(createPositions("123456789012345", 5));
+
+        List<Position> positions = store.selectPositions(0, 3);
+
+        assertEquals(3, positions.size());
+        assertEquals("123456789012345", positions.get(0).getDeviceId());
+        assertEquals(51.5012345, positions.get(0).getLatitude(), 0.0000001);
+        assertEquals(-0.1234567, positions.get(0).getLongitude(), 0.0000001);
+        assertEquals(87.5, positions.get(0).getBattery(), 0.1);
+        assertEquals(2000, positions.get(2).getTime().getTime());
+
+        store.deletePositions(new long[] { positions.get(1).getId(), positions.get(2).getId() });
+
+        assertEquals(3, store.getRows());
+        assertEquals(positions.get(0).getId(), store.selectPositions(0, 5).get(0).getId());
+
+        store = new SegmentStore(RuntimeEnvironment.application);
+
+        assertEquals(3, store.getRows());
+        assertEquals(2, store.selectPositions(positions.get(0).getId(), 5).size());
+
+    }
+
+    @Test
+    public void testInvalidDevice() throws Exception {
+
+        SegmentStore store = new SegmentStore(RuntimeEnvironment.application);
+
+        store.insertPositions(createPositions("123456789012345", 5));
+
+        char[] data = new char[SegmentStore.HEADER_SIZE];
+        Arrays.fill(data, '1');
+        String deviceId = new String(data);
+        assertFalse(SegmentStore.isValidDevice(deviceId));
+
+        try {
+            store.insertPositions(createPositions(deviceId, 1));
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals(5, store.getRows());
+        }
+
+    }
+
+    @Test
+    public void testSegments() throws Exception {
+
+        SegmentStore store = new SegmentStore(RuntimeEnvironment.application);
+
+        store.insertPositions(createPositions("123456789012345", SegmentStore.SEGMENT_RECORDS + 1));
+        store.insertPositions(createPositions("987654321098765", 1));
+
+        assertEquals(3 * SegmentStore.SEGMENT_SIZE, store.getBytes());
+
+        List<Position> positions = store.selectPositions(0, SegmentStore.SEGMENT_RECORDS);
+        long[] ids = new long[positions.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = positions.get(i).getId();
+        }
+        store.deletePositions(ids);
+
+        assertEquals(2 * SegmentStore.SEGMENT_SIZE, store.getBytes());
+
+        positions = store.selectPositions(0, 5);
+
+        assertEquals(2, positions.size());
+        assertEquals("123456789012345", positions.get(0).getDeviceId());
+        assertEquals("987654321098765", positions.get(1).getDeviceId());
+        assertTrue(positions.get(0).getId() > ids[ids.length - 1]);
+
+    }
+
+    @Test
+    public void testChangeDevice() throws Exception {
+
+        SegmentStore store = new SegmentStore(RuntimeEnvironment.application);
+
+        store.insertPositions(createPositions("123456789012345", 2));
+        store.insertPositions(createPositions("987654321098765", 1));
+
+        store.changeDevice("987654321098765", false);
+
+        assertEquals(1, store.getRows());
+        assertEquals(SegmentStore.SEGMENT_SIZE, store.getBytes());
+
+        store.insertPositions(createPositions("123456789012345", 1));
+        store.changeDevice("555555555555555", true);
+
+        store = new SegmentStore(RuntimeEnvironment.application);
+
+        List<Position> positions = store.selectPositions(0, 5);
+
+        assertEquals(2, positions.size());
+        assertEquals("555555555555555", positions.get(0).getDeviceId());
+        assertEquals("555555555555555", positions.get(1).getDeviceId());
+
+    }
+
+}